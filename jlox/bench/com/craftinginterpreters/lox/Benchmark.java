@@ -0,0 +1,296 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks for the scan / parse / print pipeline over generated sources.
+ *
+ * Usage: Benchmark [--warmup <ms>] [--iterations <n>] [--time <ms>]
+ * [--corpus <dir>] [filter...]
+ *
+ * Every benchmark is warmed up first and then measured in a number of timed
+ * iterations. Reported are operations per second, MB/s and tokens/s over the
+ * source, and the bytes allocated per operation.
+ */
+public class Benchmark {
+    private static final long SEED = 42;
+
+    // Results are written here so the JIT can't drop the work
+    private static volatile Object sink;
+
+    private static long warmupMillis = 2000;
+    private static int iterations = 5;
+    private static long iterationMillis = 1000;
+    private static final List<String> filters = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        String corpusDir = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--warmup":
+                warmupMillis = Long.parseLong(args[++i]);
+                break;
+            case "--iterations":
+                iterations = Integer.parseInt(args[++i]);
+                break;
+            case "--time":
+                iterationMillis = Long.parseLong(args[++i]);
+                break;
+            case "--corpus":
+                corpusDir = args[++i];
+                break;
+            default:
+                filters.add(args[i]);
+            }
+        }
+
+        List<Corpus> corpora = List.of(Corpus.generate("small", 1024, SEED),
+                Corpus.generate("medium", 64 * 1024, SEED), Corpus.generate("large", 8 * 1024 * 1024, SEED));
+        List<Corpus> arithmetic = List.of(Corpus.arithmetic("small", 1024, SEED),
+                Corpus.arithmetic("medium", 64 * 1024, SEED), Corpus.arithmetic("large", 8 * 1024 * 1024, SEED));
+        List<Corpus> programs = List.of(Corpus.program("medium", 64 * 1024, SEED),
+                Corpus.program("large", 8 * 1024 * 1024, SEED));
+
+        System.out.println("# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        System.out.println("# warmup " + warmupMillis + " ms, " + iterations + " x " + iterationMillis + " ms");
+        System.out.printf("%-16s %-8s %20s %10s %14s %14s%n", "benchmark", "corpus", "ops/s", "MB/s", "tokens/s",
+                "alloc B/op");
+
+        for (Corpus corpus : corpora) {
+            if (corpusDir != null) {
+                Path path = Paths.get(corpusDir, corpus.name + ".lox");
+                Files.createDirectories(path.getParent());
+                Files.write(path, corpus.source.getBytes(StandardCharsets.UTF_8));
+            }
+
+            run(corpus);
+        }
+
+        for (Corpus corpus : arithmetic) {
+            if (corpusDir != null) {
+                Path path = Paths.get(corpusDir, corpus.name + "-arithmetic.lox");
+                Files.write(path, corpus.source.getBytes(StandardCharsets.UTF_8));
+            }
+
+            evaluate(corpus);
+        }
+
+        for (Corpus corpus : programs) {
+            if (corpusDir != null) {
+                Path path = Paths.get(corpusDir, corpus.name + "-program.lox");
+                Files.write(path, corpus.source.getBytes(StandardCharsets.UTF_8));
+            }
+
+            edit(corpus);
+        }
+    }
+
+    private static void run(Corpus corpus) {
+        LoxContext context = new LoxContext();
+        String source = corpus.source;
+        ByteBuffer bytes = ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8));
+        List<Token> tokens = new Scanner(source, context).scanTokens();
+        TokenBuffer packed = new Scanner(source, context).scanPacked();
+        Expression expression = new Parser(tokens, context).parse().get(0);
+        FlatAst flat = new Parser(tokens, context).parseFlat();
+        AstPrinter printer = new AstPrinter();
+        ByteBuffer serialized = ExpressionSerializer.serialize(expression);
+
+        Case scan = new Case(corpus, tokens.size());
+
+        scan.measure("scan", () -> new Scanner(source, context).scanTokens());
+        scan.measure("scan.packed", () -> new Scanner(source, context).scanPacked());
+        scan.measure("scan.bytes", () -> new Scanner(new ByteSource(bytes), context).scanPacked());
+        scan.measure("scan.parallel", () -> new ParallelScanner(source, context).scanPacked());
+        scan.measure("scan.table", () -> new TableScanner(source, context).scanPacked());
+        scan.measure("scan.table.bytes", () -> new TableScanner(new ByteSource(bytes), context).scanPacked());
+        scan.measure("parse", () -> new Parser(tokens, context).parse());
+        scan.measure("parse.packed", () -> new Parser(packed.stream(), context).parse());
+        scan.measure("parse.flat", () -> new Parser(packed.stream(), context).parseFlat());
+        scan.measure("parse.pratt", () -> new PrattParser(tokens, context).parse());
+        scan.measure("parse.pratt.packed", () -> new PrattParser(packed.stream(), context).parse());
+        scan.measure("parse.pratt.flat", () -> new PrattParser(packed.stream(), context).parseFlat());
+        scan.measure("scan+parse",
+                () -> new Parser(new ScanningTokenStream(new Scanner(source, context)), context).parse());
+        scan.measure("print", () -> printer.print(expression));
+        scan.measure("print.flat", () -> printer.print(flat));
+        scan.measure("serialize", () -> ExpressionSerializer.serialize(expression));
+        scan.measure("deserialize", () -> ExpressionSerializer.deserialize(serialized.duplicate()));
+    }
+
+    private static void evaluate(Corpus corpus) {
+        LoxContext context = new LoxContext();
+        List<Token> tokens = new Scanner(corpus.source, context).scanTokens();
+        Expression expression = new Parser(tokens, context).parse().get(0);
+        Interpreter interpreter = new Interpreter(context);
+        Compiler compiler = new Compiler();
+        Chunk chunk = compiler.compile(expression);
+        VM vm = new VM(context);
+        Optimizer optimizer = new Optimizer(context);
+        Expression optimized = optimizer.optimize(expression);
+        FlatAst flat = new Parser(tokens, context).parseFlat();
+        FlatInterpreter flatInterpreter = new FlatInterpreter(context);
+        // Specializes itself on the first run, later ones run the specialized tree
+        Node.Root nodes = new NodeInterpreter(context).build(expression);
+
+        Case evaluate = new Case(corpus, tokens.size());
+
+        if (selected("optimize " + corpus.name)) {
+            System.out.println("# " + corpus.name + ": " + countNodes(expression) + " nodes, "
+                    + countNodes(optimized) + " after optimizing");
+        }
+
+        evaluate.measure("eval", () -> interpreter.evaluate(expression));
+        evaluate.measure("optimize", () -> optimizer.optimize(expression));
+        evaluate.measure("eval.optimized", () -> interpreter.evaluate(optimized));
+        evaluate.measure("eval.flat", () -> flatInterpreter.evaluate(flat, 0));
+        evaluate.measure("eval.nodes", nodes::execute);
+        evaluate.measure("compile", () -> compiler.compile(expression));
+        evaluate.measure("vm", () -> vm.run(chunk));
+    }
+
+    /**
+     * Full reparse against an incremental edit in the middle of a program
+     */
+    private static void edit(Corpus corpus) {
+        LoxContext context = new LoxContext();
+        String source = corpus.source;
+        List<Token> tokens = new Scanner(source, context).scanTokens();
+        IncrementalParser incremental = new IncrementalParser(source, context);
+        // Start of a statement, so the edit keeps the program valid
+        int offset = source.indexOf(";\n", source.length() / 2) + 2;
+
+        Case edit = new Case(corpus, tokens.size());
+
+        edit.measure("reparse",
+                () -> new Parser(new ScanningTokenStream(new Scanner(source, context)), context).parse());
+        edit.measure("edit", () -> {
+            incremental.edit(offset, 0, "1 + ");
+            incremental.edit(offset, 4, "");
+            return incremental;
+        });
+    }
+
+    /**
+     * Measurements over one corpus
+     */
+    private static class Case {
+        private final Corpus corpus;
+        private final int tokenCount;
+
+        Case(Corpus corpus, int tokenCount) {
+            this.corpus = corpus;
+            this.tokenCount = tokenCount;
+        }
+
+        void measure(String name, Supplier<Object> workload) {
+            if (!selected(name + " " + corpus.name)) {
+                return;
+            }
+
+            // Warmup
+            long deadline = System.nanoTime() + warmupMillis * 1_000_000;
+
+            while (System.nanoTime() < deadline) {
+                sink = workload.get();
+            }
+
+            // Measurement
+            double[] opsPerSecond = new double[iterations];
+            long totalOps = 0;
+            long totalAllocated = 0;
+
+            for (int i = 0; i < iterations; i++) {
+                long ops = 0;
+                long allocatedBefore = allocatedBytes();
+                long startTime = System.nanoTime();
+                long end = startTime + iterationMillis * 1_000_000;
+                long now;
+
+                do {
+                    sink = workload.get();
+                    ops++;
+                    now = System.nanoTime();
+                } while (now < end);
+
+                totalAllocated += allocatedBytes() - allocatedBefore;
+                totalOps += ops;
+                opsPerSecond[i] = ops / ((now - startTime) / 1e9);
+            }
+
+            double mean = 0;
+
+            for (double value : opsPerSecond) {
+                mean += value;
+            }
+
+            mean /= iterations;
+
+            double variance = 0;
+
+            for (double value : opsPerSecond) {
+                variance += (value - mean) * (value - mean);
+            }
+
+            double error = Math.sqrt(variance / iterations);
+            double megabytes = corpus.source.length() / (1024.0 * 1024.0);
+
+            System.out.printf("%-16s %-8s %20s %10.1f %14.0f %14d%n", name, corpus.name,
+                    String.format("%.1f+-%.1f", mean, error), mean * megabytes, mean * tokenCount,
+                    totalAllocated / totalOps);
+        }
+    }
+
+    private static int countNodes(Expression expression) {
+        if (expression instanceof Expression.Binary binary) {
+            return 1 + countNodes(binary.left) + countNodes(binary.right);
+        }
+
+        if (expression instanceof Expression.Grouping grouping) {
+            return 1 + countNodes(grouping.expression);
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            return 1 + countNodes(unary.right);
+        }
+
+        return 1;
+    }
+
+    private static boolean selected(String name) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Bytes allocated by this thread so far, or 0 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
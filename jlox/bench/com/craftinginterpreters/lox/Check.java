@@ -0,0 +1,449 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Differential checks: implementations that must behave the same are run side
+ * by side over random sources, and the first source they disagree on is
+ * printed.
+ *
+ * Usage: Check [--seed <n>] [--count <n>] [check...]
+ *
+ * Runs the named checks, or all of them. --count is the number of sources per
+ * check. The exit code is 1 if any check found a difference.
+ */
+public class Check {
+    /**
+     * One check over count random sources
+     */
+    private interface Differential {
+        /**
+         * @return Description of the first difference, or null if there is none
+         */
+        String run(Random random, int count);
+    }
+
+    private static final Map<String, Differential> CHECKS = new LinkedHashMap<>();
+
+    static {
+        CHECKS.put("scanner", Check::scanner);
+        CHECKS.put("parser", Check::parser);
+        CHECKS.put("incremental", Check::incremental);
+        CHECKS.put("nodes", Check::nodes);
+    }
+
+    // Pieces the random sources are made of: every kind of token, broken ones
+    // included, and the places where scanners tend to differ
+    private static final String[] SCANNER_PIECES = { "1", "23", "4.5", "7.", ".5", " ", "\n", "\r", "\t", ";", "+",
+            "-", "*", "/", "==", "=", "!", "!=", "<", "<=", ">", ">=", "(", ")", "{", "}", ",", ".", "\"s\"",
+            "\"multi\nline\"", "\"", "// c\n", "//", "true", "nil", "print", "and", "orchid", "_x1", "@", "#", "\0",
+            "\u00e9", "\u20ac", "12345678901234567890.123", "0.000001" };
+
+    private static final String[] PARSER_PIECES = { "1", "2.5", "\"s\"", "true", "false", "nil", "+", "-", "*", "/",
+            "==", "!=", "<", "<=", ">", ">=", "!", "(", ")", ";", " ", "x", "var", "print", "@", "(1 + 2)", "3 * 4",
+            "- -5" };
+
+    private static final String[] EDIT_PIECES = { "1", "23", "4.5", " ", "\n", ";", ";\n", "+", "-", "*", "/", "==",
+            "!", "(", ")", "\"s\"", "\"multi\nline\"", "\"", "// c\n", "//", "true", "nil", "print", "@", "<=", "x" };
+    // Edits made to a document before starting a new one
+    private static final int EDITS_PER_DOCUMENT = 100;
+
+    private static final String[] NODE_OPERATORS = { "+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">=" };
+    // Values a leaf is swapped for to make its specialized parent see new types
+    private static final Object[] NODE_VALUES = { 2.0, LoxString.of("t"), LoxString.of("u"), null, false };
+
+    public static void main(String[] args) {
+        long seed = 42;
+        int count = 100_000;
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--seed":
+                seed = Long.parseLong(args[++i]);
+                break;
+            case "--count":
+                count = Integer.parseInt(args[++i]);
+                break;
+            default:
+                if (!CHECKS.containsKey(args[i])) {
+                    System.err.println("Unknown check " + args[i] + ", expected one of " + CHECKS.keySet());
+                    System.exit(64);
+                }
+
+                names.add(args[i]);
+            }
+        }
+
+        if (names.isEmpty()) {
+            names.addAll(CHECKS.keySet());
+        }
+
+        boolean failed = false;
+
+        for (String name : names) {
+            String difference = CHECKS.get(name).run(new Random(seed), count);
+
+            if (difference == null) {
+                System.out.printf("%-12s ok, %d sources%n", name, count);
+            } else {
+                System.out.printf("%-12s FAILED%n%s%n", name, difference);
+                failed = true;
+            }
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * TableScanner against Scanner: the same tokens, packed or not, and the same
+     * errors, on strings and on UTF-8 bytes. The bytes have to scan like the
+     * string, too
+     */
+    private static String scanner(Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            String source = randomSource(random, SCANNER_PIECES, 40);
+            String difference = compareScanners(source, source);
+            ByteSource bytes = new ByteSource(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+
+            if (difference == null) {
+                difference = compareScanners(bytes, source);
+            }
+
+            if (difference == null) {
+                difference = compareSources(bytes, source);
+            }
+
+            if (difference != null) {
+                return difference;
+            }
+        }
+
+        return null;
+    }
+
+    private static String compareScanners(CharSequence input, String source) {
+        List<String> expectedErrors = new ArrayList<>();
+        List<String> actualErrors = new ArrayList<>();
+        LoxContext expectedContext = new LoxContext(System.out, expectedErrors::add, LoxContext.Options.DEFAULT);
+        LoxContext actualContext = new LoxContext(System.out, actualErrors::add, LoxContext.Options.DEFAULT);
+
+        String expected = describe(new Scanner(input, expectedContext).scanTokens());
+        String actual = describe(new TableScanner(input, actualContext).scanTokens());
+
+        if (!expected.equals(actual) || !expectedErrors.equals(actualErrors)) {
+            return difference(source, expected + expectedErrors, actual + actualErrors);
+        }
+
+        TokenBuffer expectedPacked = new Scanner(input, expectedContext).scanPacked();
+        TokenBuffer actualPacked = new TableScanner(input, actualContext).scanPacked();
+
+        if (!describe(expectedPacked).equals(describe(actualPacked))) {
+            return difference(source, describe(expectedPacked), describe(actualPacked));
+        }
+
+        return null;
+    }
+
+    private static String compareSources(ByteSource bytes, String source) {
+        List<String> expectedErrors = new ArrayList<>();
+        List<String> actualErrors = new ArrayList<>();
+        LoxContext expectedContext = new LoxContext(System.out, expectedErrors::add, LoxContext.Options.DEFAULT);
+        LoxContext actualContext = new LoxContext(System.out, actualErrors::add, LoxContext.Options.DEFAULT);
+
+        String expected = describe(new Scanner(source, expectedContext).scanTokens());
+        String actual = describe(new Scanner(bytes, actualContext).scanTokens());
+
+        if (!expected.equals(actual) || !expectedErrors.equals(actualErrors)) {
+            return difference(source, expected + expectedErrors, actual + actualErrors);
+        }
+
+        return null;
+    }
+
+    /**
+     * PrattParser against Parser: the same trees, as nodes and flat, and the same
+     * errors
+     */
+    private static String parser(Random random, int count) {
+        AstPrinter printer = new AstPrinter();
+
+        for (int i = 0; i < count; i++) {
+            String source = randomSource(random, PARSER_PIECES, 30);
+            List<String> expectedErrors = new ArrayList<>();
+            List<String> actualErrors = new ArrayList<>();
+            LoxContext expectedContext = new LoxContext(System.out, expectedErrors::add, LoxContext.Options.DEFAULT);
+            LoxContext actualContext = new LoxContext(System.out, actualErrors::add, LoxContext.Options.DEFAULT);
+            // Scanner errors are the same for both, the scanner check covers them
+            LoxContext scanContext = new LoxContext(System.out, message -> {}, LoxContext.Options.DEFAULT);
+            List<Token> tokens = new Scanner(source, scanContext).scanTokens();
+
+            List<Expression> expected = new Parser(tokens, expectedContext).parse();
+            List<Expression> actual = new PrattParser(tokens, actualContext).parse();
+
+            if (!ExpressionSerializer.serializeAll(expected).equals(ExpressionSerializer.serializeAll(actual))
+                    || !expectedErrors.equals(actualErrors)) {
+                return difference(source, printer.print(FlatAst.of(expected)) + expectedErrors,
+                        printer.print(FlatAst.of(actual)) + actualErrors);
+            }
+
+            String expectedFlat = printer.print(new Parser(tokens, expectedContext).parseFlat());
+            String actualFlat = printer.print(new PrattParser(tokens, actualContext).parseFlat());
+
+            if (!expectedFlat.equals(actualFlat)) {
+                return difference(source, expectedFlat, actualFlat);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * IncrementalParser against parsing the whole text: after every random edit,
+     * the same trees, lines included, and whether there are errors. Every edited
+     * text counts as a source
+     */
+    private static String incremental(Random random, int count) {
+        LoxContext quiet = new LoxContext(System.out, message -> {}, LoxContext.Options.DEFAULT);
+        // Statements are parsed one by one, so their errors never add up to the limit
+        LoxContext.Options unlimited = new LoxContext.Options(Lox.Engine.TREE, null, null, false, false, false,
+                Integer.MAX_VALUE);
+        IncrementalParser parser = null;
+
+        for (int i = 0; i < count; i++) {
+            if (i % EDITS_PER_DOCUMENT == 0) {
+                StringBuilder document = new StringBuilder();
+
+                for (int statement = 0; statement < 30; statement++) {
+                    document.append(random.nextBoolean() ? "1 + 2 * \"a\";\n" : randomSource(random, EDIT_PIECES, 4));
+                }
+
+                parser = new IncrementalParser(document, quiet);
+            }
+
+            String before = parser.text().toString();
+            int offset = random.nextInt(before.length() + 1);
+            int removed = random.nextInt(Math.min(6, before.length() - offset) + 1);
+            String inserted = random.nextInt(3) == 0 ? "" : randomSource(random, EDIT_PIECES, 3);
+            String source = before.substring(0, offset) + inserted + before.substring(offset + removed);
+
+            parser.edit(offset, removed, inserted);
+
+            LoxContext context = new LoxContext(System.out, message -> {}, unlimited);
+            List<Expression> expected = new Parser(new Scanner(source, context).scanTokens(), context).parse();
+            List<Expression> actual = parser.statements();
+
+            if (!source.contentEquals(parser.text())
+                    || !ExpressionSerializer.serializeAll(expected).equals(ExpressionSerializer.serializeAll(actual))
+                    || context.hadError != parser.hasErrors()) {
+                AstPrinter printer = new AstPrinter();
+
+                return difference(before + "\nedited at " + offset + ", removing " + removed + ", inserting "
+                        + inserted + ", to:\n" + source, printer.print(FlatAst.of(expected)) + " " + context.hadError,
+                        printer.print(FlatAst.of(actual)) + " " + parser.hasErrors());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Self-specializing nodes against Interpreter: the same value or error, on
+     * the first run, which specializes the nodes, and on later ones. Then one or
+     * two leaves of the specialized tree are swapped for values of other types,
+     * so nodes above them have to give up their specialization, and the tree has
+     * to agree with Interpreter on the edited expression
+     */
+    private static String nodes(Random random, int count) {
+        LoxContext context = new LoxContext(System.out, message -> {}, LoxContext.Options.DEFAULT);
+        Interpreter interpreter = new Interpreter(context);
+        NodeInterpreter nodeInterpreter = new NodeInterpreter(context);
+
+        for (int i = 0; i < count; i++) {
+            String source = randomExpression(random, 1 + random.nextInt(6)) + ";";
+            Expression expression = new Parser(new Scanner(source, context).scanTokens(), context).parse().get(0);
+            String expected = result(() -> interpreter.evaluate(expression));
+            Node.Root root = nodeInterpreter.build(expression);
+
+            for (int run = 0; run < 3; run++) {
+                String actual = result(root::execute);
+
+                if (!expected.equals(actual)) {
+                    return difference(source, expected, "run " + (run + 1) + ": " + actual);
+                }
+            }
+
+            List<Node> leaves = new ArrayList<>();
+            Node.Root tree = new Node.Root(toNodes(expression, leaves), 0);
+            // Specializes it; the value was checked above
+            result(tree::execute);
+
+            // Two leaves can turn a number node into a string concatenation, which
+            // shows whether the operands are passed on in order
+            Expression edited = expression;
+            String edits = "";
+
+            for (int swap = 1 + random.nextInt(2); swap > 0; swap--) {
+                int leaf = random.nextInt(leaves.size());
+                Object value = NODE_VALUES[random.nextInt(NODE_VALUES.length)];
+                Node replacement = value instanceof Double number ? new Node.NumberLiteral(number)
+                        : new Node.Constant(value);
+                leaves.set(leaf, leaves.get(leaf).replace(replacement));
+                edited = replaceLeaf(edited, new int[] { leaf }, value);
+                edits += "\nleaf " + leaf + " set to " + Interpreter.stringify(value);
+            }
+
+            Expression editedExpression = edited;
+            String editedExpected = result(() -> interpreter.evaluate(editedExpression));
+
+            for (int run = 0; run < 2; run++) {
+                String actual = result(tree::execute);
+
+                if (!editedExpected.equals(actual)) {
+                    return difference(source + edits, editedExpected, "run " + (run + 1) + ": " + actual);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Random expression, depth levels deep at most, of literals of all
+     *         types; mostly arithmetic so that nodes specialize to numbers
+     */
+    private static String randomExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            switch (random.nextInt(8)) {
+            case 0:
+                return "\"s" + random.nextInt(3) + "\"";
+            case 1:
+                return "true";
+            case 2:
+                return "nil";
+            default:
+                return random.nextInt(20) == 0 ? "0" : Integer.toString(random.nextInt(9) - 2);
+            }
+        }
+
+        switch (random.nextInt(7)) {
+        case 0:
+            return "-" + randomExpression(random, depth - 1);
+        case 1:
+            return "!" + randomExpression(random, depth - 1);
+        case 2:
+            return "(" + randomExpression(random, depth - 1) + ")";
+        default:
+            String operator = NODE_OPERATORS[random.nextInt(random.nextInt(3) == 0 ? NODE_OPERATORS.length : 4)];
+            return randomExpression(random, depth - 1) + " " + operator + " " + randomExpression(random, depth - 1);
+        }
+    }
+
+    /**
+     * Build the unspecialized nodes for an expression, as NodeInterpreter does
+     *
+     * @param leaves Where the literal nodes go, left to right
+     */
+    private static Node toNodes(Expression expression, List<Node> leaves) {
+        if (expression instanceof Expression.Binary binary) {
+            Node left = toNodes(binary.left, leaves);
+            return new Node.Uninitialized(binary.operator, left, toNodes(binary.right, leaves));
+        }
+
+        if (expression instanceof Expression.Grouping grouping) {
+            return toNodes(grouping.expression, leaves);
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            Node operand = toNodes(unary.right, leaves);
+            return unary.operator.type == TokenType.MINUS ? new Node.Negate(unary.operator, operand)
+                    : new Node.Not(operand);
+        }
+
+        Object value = ((Expression.Literal) expression).value;
+        Node leaf = value instanceof Double number ? new Node.NumberLiteral(number) : new Node.Constant(value);
+        leaves.add(leaf);
+
+        return leaf;
+    }
+
+    /**
+     * @param leaf Index of the literal to replace, left to right; counted down
+     *             as literals are passed
+     * @return Copy of expression with the literal replaced by value
+     */
+    private static Expression replaceLeaf(Expression expression, int[] leaf, Object value) {
+        if (expression instanceof Expression.Binary binary) {
+            Expression left = replaceLeaf(binary.left, leaf, value);
+            return new Expression.Binary(left, binary.operator, replaceLeaf(binary.right, leaf, value));
+        }
+
+        if (expression instanceof Expression.Grouping grouping) {
+            return new Expression.Grouping(replaceLeaf(grouping.expression, leaf, value));
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            return new Expression.Unary(unary.operator, replaceLeaf(unary.right, leaf, value));
+        }
+
+        return leaf[0]-- == 0 ? new Expression.Literal(value) : expression;
+    }
+
+    /**
+     * @return The value, printed, or the runtime error with where it happened
+     */
+    private static String result(Supplier<Object> evaluation) {
+        try {
+            return Interpreter.stringify(evaluation.get());
+        } catch (RuntimeError error) {
+            return "error " + error.getMessage() + " at " + error.token.lexeme + " on line " + error.token.line();
+        }
+    }
+
+    private static String describe(List<Token> tokens) {
+        StringBuilder builder = new StringBuilder();
+
+        for (Token token : tokens) {
+            builder.append(token.type).append(' ').append(token.lexeme).append(' ').append(token.literal).append(' ')
+                    .append(token.line()).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    private static String describe(TokenBuffer tokens) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            builder.append(tokens.type(i)).append(' ').append(tokens.start(i)).append(' ').append(tokens.length(i))
+                    .append(' ').append(tokens.literal(i)).append(' ').append(tokens.line(i)).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return A source of up to maxPieces random pieces
+     */
+    private static String randomSource(Random random, String[] pieces, int maxPieces) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(maxPieces + 1);
+
+        for (int i = 0; i < length; i++) {
+            builder.append(pieces[random.nextInt(pieces.length)]);
+        }
+
+        return builder.toString();
+    }
+
+    private static String difference(String source, String expected, String actual) {
+        return "source:\n" + source + "\nexpected:\n" + expected + "\nactual:\n" + actual;
+    }
+}
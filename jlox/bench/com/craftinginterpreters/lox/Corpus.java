@@ -0,0 +1,144 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Random;
+
+/**
+ * Generates Lox sources for the benchmarks. The same size and seed always give
+ * the same source, so numbers from different runs can be compared. Mixed
+ * sources use every kind of token but don't evaluate without errors; arithmetic
+ * sources only use numbers and + - * /, so they are good for the evaluators.
+ * Programs are many short statements instead of one big expression
+ */
+class Corpus {
+    private static final String[] OPERATORS = { "==", "!=", "<", "<=", ">", ">=", "+", "-", "*", "/" };
+    private static final String[] ARITHMETIC_OPERATORS = { "+", "-", "*", "/" };
+    private static final String[] STRINGS = { "\"hello\"", "\"lox\"", "\"a somewhat longer string literal\"", "\"\"" };
+    private static final String[] NAMES = { "true", "false", "nil" };
+
+    // Rough size of a leaf with its operator, parentheses and whitespace
+    private static final int BYTES_PER_LEAF = 12;
+    // Leaves per statement in programs
+    private static final int STATEMENT_LEAVES = 16;
+
+    final String name;
+    final String source;
+
+    private final String[] operators;
+    private final boolean arithmetic;
+    private final Random random;
+    private final StringBuilder builder;
+    private int column = 0;
+
+    private Corpus(String name, int targetBytes, long seed, boolean arithmetic, boolean program) {
+        this.name = name;
+        this.arithmetic = arithmetic;
+        this.operators = arithmetic ? ARITHMETIC_OPERATORS : OPERATORS;
+        this.random = new Random(seed);
+        this.builder = new StringBuilder(targetBytes + targetBytes / 4);
+
+        int leaves = Math.max(1, targetBytes / BYTES_PER_LEAF);
+
+        if (program) {
+            for (int left = leaves; left > 0; left -= STATEMENT_LEAVES) {
+                expression(Math.min(left, STATEMENT_LEAVES));
+                builder.append(";\n");
+                column = builder.length();
+            }
+        } else {
+            // Balanced tree, so nesting stays shallow even for huge sources
+            expression(leaves);
+        }
+
+        this.source = builder.toString();
+    }
+
+    /**
+     * @param name        Label for the reports
+     * @param targetBytes Approximate size of the source
+     * @param seed        Seed for the random generator
+     */
+    static Corpus generate(String name, int targetBytes, long seed) {
+        return new Corpus(name, targetBytes, seed, false, false);
+    }
+
+    /**
+     * Same as generate(), but only numbers and arithmetic
+     */
+    static Corpus arithmetic(String name, int targetBytes, long seed) {
+        return new Corpus(name, targetBytes, seed, true, false);
+    }
+
+    /**
+     * Same leaves as generate(), but split into statements
+     */
+    static Corpus program(String name, int targetBytes, long seed) {
+        return new Corpus(name, targetBytes, seed, false, true);
+    }
+
+    private void expression(int leaves) {
+        if (leaves == 1) {
+            leaf();
+            return;
+        }
+
+        builder.append('(');
+        expression(leaves / 2);
+        builder.append(' ').append(operators[random.nextInt(operators.length)]);
+        whitespace();
+        expression(leaves - leaves / 2);
+        builder.append(')');
+    }
+
+    private void leaf() {
+        if (arithmetic) {
+            number();
+            return;
+        }
+
+        int kind = random.nextInt(10);
+
+        if (kind < 4) {
+            builder.append(random.nextInt(100000));
+        } else if (kind < 6) {
+            builder.append(random.nextInt(1000)).append('.').append(random.nextInt(100));
+        } else if (kind < 7) {
+            builder.append(STRINGS[random.nextInt(STRINGS.length)]);
+        } else if (kind < 8) {
+            builder.append(NAMES[random.nextInt(NAMES.length)]);
+        } else if (kind < 9) {
+            builder.append('-').append(random.nextInt(1000));
+        } else {
+            builder.append('!').append(NAMES[random.nextInt(NAMES.length)]);
+        }
+    }
+
+    private void number() {
+        int kind = random.nextInt(3);
+
+        if (kind == 0) {
+            builder.append(random.nextInt(100000));
+        } else if (kind == 1) {
+            builder.append(random.nextInt(1000)).append('.').append(random.nextInt(100));
+        } else {
+            builder.append('-').append(random.nextInt(1000));
+        }
+    }
+
+    /**
+     * Mostly a single space, but wraps lines and sprinkles in comments like real
+     * code would
+     */
+    private void whitespace() {
+        if (builder.length() - column < 80) {
+            builder.append(' ');
+            return;
+        }
+
+        if (random.nextInt(4) == 0) {
+            builder.append(" // generated");
+        }
+
+        builder.append('\n');
+        column = builder.length();
+    }
+}
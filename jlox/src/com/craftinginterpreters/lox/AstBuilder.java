@@ -0,0 +1,21 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Receives the nodes the Parser recognizes, children first. Nodes are referred
+ * to by int handles, so a builder is free to store them as objects or in flat
+ * arrays
+ */
+interface AstBuilder {
+    int binary(int left, Token operator, int right);
+
+    int grouping(int expression);
+
+    /**
+     * Literal of any type but number
+     */
+    int literal(Object value);
+
+    int number(double value);
+
+    int unary(Token operator, int right);
+}
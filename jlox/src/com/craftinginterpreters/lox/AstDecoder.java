@@ -0,0 +1,114 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Low-level reader for the binary AST format written by AstEncoder. The string
+ * and token tables are read up front; the tree is then read by the generated
+ * ExpressionSerializer
+ */
+class AstDecoder {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteBuffer input;
+    private final String[] strings;
+    private final Token[] tokens;
+
+    /**
+     * @param input Buffer positioned at the start of the string table
+     */
+    AstDecoder(ByteBuffer input) {
+        this.input = input;
+
+        strings = new String[readCount()];
+
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readCount()];
+            input.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        tokens = new Token[readCount()];
+
+        for (int i = 0; i < tokens.length; i++) {
+            TokenType type = TYPES[readIndex(TYPES.length)];
+            String lexeme = strings[readIndex(strings.length)];
+            Object literal = readValue();
+            int line = (int) readVarint();
+
+            tokens[i] = new Token(type, lexeme, literal, line);
+        }
+    }
+
+    int readTag() {
+        return (int) readVarint();
+    }
+
+    Token readToken() {
+        return tokens[readIndex(tokens.length)];
+    }
+
+    Object readValue() {
+        int tag = (int) readVarint();
+
+        switch (tag) {
+        case AstEncoder.NIL:
+            return null;
+        case AstEncoder.FALSE:
+            return false;
+        case AstEncoder.TRUE:
+            return true;
+        case AstEncoder.INTEGER:
+            return (double) unZigZag(readVarint());
+        case AstEncoder.NUMBER:
+            return input.getDouble();
+        case AstEncoder.STRING:
+            return LoxString.of(strings[readIndex(strings.length)]);
+        default:
+            throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarint() {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte part = input.get();
+            value |= (long) (part & 0x7f) << shift;
+
+            if (part >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Reads a table size, checking it against what's left of the input
+     */
+    int readCount() {
+        long count = readVarint();
+
+        if (count < 0 || count > input.remaining()) {
+            throw new IllegalArgumentException("Bad count " + count);
+        }
+
+        return (int) count;
+    }
+
+    private int readIndex(int size) {
+        long index = readVarint();
+
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Index " + index + " out of range");
+        }
+
+        return (int) index;
+    }
+}
@@ -0,0 +1,194 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Low-level writer for the binary AST format; the per-node code is generated
+ * (see ExpressionSerializer). Integers are varints, and strings and tokens are
+ * written once into shared tables and referenced by index from the tree.
+ *
+ * Layout: string table, token table, then the trees (after their count, if
+ * there are several). A tree is written in post-order: every node after its
+ * children, left to right, as a tag followed by its fields other than the
+ * children, and an END tag after the root. A reader pushes every node it builds
+ * onto a stack and pops its children off it, the last child first.
+ *
+ * String table: count, then per string its length in UTF-8 bytes and the
+ * bytes. Token table: count, then per token its type's ordinal, the string
+ * index of its lexeme, its literal as a value and its line. A value is a tag
+ * (NIL, FALSE, TRUE, INTEGER, NUMBER, STRING), then a zigzag varint for
+ * INTEGER, a big-endian double for NUMBER, or a string index for STRING
+ */
+class AstEncoder {
+    // Value tags
+    static final int NIL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INTEGER = 3;
+    static final int NUMBER = 4;
+    static final int STRING = 5;
+
+    // Integral doubles up to this size are written as varints
+    private static final double MAX_INTEGER = 1L << 53;
+
+    private ByteBuffer output = ByteBuffer.allocate(256);
+
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private record TokenKey(TokenType type, String lexeme, Object literal, int line) {
+    }
+
+    private final Map<TokenKey, Integer> tokenIndexes = new HashMap<>();
+    private final List<Token> tokens = new ArrayList<>();
+
+    void writeTag(int tag) {
+        writeVarint(tag);
+    }
+
+    /**
+     * Number of trees or elements that follow
+     */
+    void writeCount(int count) {
+        writeVarint(count);
+    }
+
+    /**
+     * Writes a reference to the token; equal tokens share a table entry
+     */
+    void writeToken(Token token) {
+        TokenKey key = new TokenKey(token.type, token.lexeme, token.literal, token.line());
+        Integer index = tokenIndexes.get(key);
+
+        if (index == null) {
+            index = tokens.size();
+            tokenIndexes.put(key, index);
+            tokens.add(token);
+        }
+
+        writeVarint(index);
+    }
+
+    /**
+     * Writes a literal value: nil, boolean, number or string
+     */
+    void writeValue(Object value) {
+        if (value == null) {
+            writeVarint(NIL);
+        } else if (value instanceof Boolean) {
+            writeVarint((boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            double number = (double) value;
+
+            // -0 has to keep its sign, so it can't go through a long
+            if (number == Math.rint(number) && Math.abs(number) < MAX_INTEGER
+                    && Double.doubleToRawLongBits(number) != Double.doubleToRawLongBits(-0.0)) {
+                writeVarint(INTEGER);
+                writeVarint(zigZag((long) number));
+            } else {
+                writeVarint(NUMBER);
+                ensureCapacity(8);
+                output.putDouble(number);
+            }
+        } else if (value instanceof LoxString) {
+            writeVarint(STRING);
+            writeVarint(intern(value.toString()));
+        } else {
+            throw new IllegalArgumentException("Can't serialize value " + value);
+        }
+    }
+
+    /**
+     * @return The tables followed by everything written so far, ready to read
+     */
+    ByteBuffer finish() {
+        ByteBuffer tree = output.flip();
+
+        // Token lexemes go into the string table, so intern them before writing it
+        int[] lexemes = new int[tokens.size()];
+
+        for (int i = 0; i < tokens.size(); i++) {
+            lexemes[i] = intern(tokens.get(i).lexeme);
+        }
+
+        ByteBuffer tokenTable = output = ByteBuffer.allocate(Math.max(16, tokens.size() * 4));
+        writeVarint(tokens.size());
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+
+            writeVarint(token.type.ordinal());
+            writeVarint(lexemes[i]);
+            writeValue(token.literal);
+            writeVarint(token.line());
+        }
+
+        // The token table may have added string literals, so the strings go last
+        tokenTable = output.flip();
+        output = ByteBuffer.allocate(256);
+        writeVarint(strings.size());
+
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            output.put(bytes);
+        }
+
+        ensureCapacity(tokenTable.remaining() + tree.remaining());
+        output.put(tokenTable);
+        output.put(tree);
+
+        return output.flip();
+    }
+
+    private int intern(String string) {
+        Integer index = stringIndexes.get(string);
+
+        if (index == null) {
+            index = strings.size();
+            stringIndexes.put(string, index);
+            strings.add(string);
+        }
+
+        return index;
+    }
+
+    /**
+     * Maps signed to unsigned, so small negative numbers stay short
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Seven bits per byte, high bit set if more bytes follow
+     */
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7fL) != 0) {
+            output.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+
+        output.put((byte) value);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (output.remaining() >= bytes) {
+            return;
+        }
+
+        int capacity = Math.max(output.capacity() * 2, output.position() + bytes);
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        grown.put(output.flip());
+        output = grown;
+    }
+}
@@ -1,47 +1,225 @@
 package com.craftinginterpreters.lox;
 
-public class AstPrinter implements Expression.Visitor<String> {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Prints trees in prefix notation. Nodes are not printed recursively: pending
+ * work is kept on an explicit stack, so trees of any depth can be printed, and
+ * all output goes into one buffer that is flushed to the Writer as it fills up
+ */
+public class AstPrinter implements Expression.Visitor<Void> {
+    // Flush the buffer to the Writer once it holds this many chars
+    private static final int FLUSH_SIZE = 8192;
+
+    // Work stack codes for FlatAst, nodes are >= 0
+    private static final int CLOSE = -1;
+    private static final int SPACE = -2;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private char[] chars = new char[FLUSH_SIZE];
+    // Expressions still to print and strings to append in between
+    private final ArrayDeque<Object> work = new ArrayDeque<>();
+    private int[] flatWork = new int[64];
+
     String print(Expression expression) {
-        return expression.accept(this);
+        try {
+            walk(expression, null);
+            return buffer.toString();
+        } catch (IOException error) {
+            // Nothing is written without a Writer
+            throw new UncheckedIOException(error);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Print straight to a Writer, for trees too big to hold as a string
+     *
+     * @param expression The tree
+     * @param out        Where to print it, flushed but not closed
+     * @throws IOException
+     */
+    void print(Expression expression, Writer out) throws IOException {
+        try {
+            walk(expression, out);
+            flush(out);
+            out.flush();
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Print a flat program, one line per statement. A statement prints the same
+     * as the equivalent Expression
+     */
+    String print(FlatAst ast) {
+        try {
+            walk(ast, null);
+            return buffer.toString();
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        } finally {
+            reset();
+        }
+    }
+
+    void print(FlatAst ast, Writer out) throws IOException {
+        try {
+            walk(ast, out);
+            flush(out);
+            out.flush();
+        } finally {
+            reset();
+        }
+    }
+
+    private void walk(Expression expression, Writer out) throws IOException {
+        work.push(expression);
+
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+
+            if (next instanceof Expression) {
+                ((Expression) next).accept(this);
+            } else {
+                buffer.append((String) next);
+            }
+
+            if (out != null && buffer.length() >= FLUSH_SIZE) {
+                flush(out);
+            }
+        }
     }
 
+    // The visit methods print what comes before the first child and push the
+    // rest, last part first
+
     @Override
-    public String visitBinaryExpression(Expression.Binary expression) {
-        return parenthesize(expression.operator.lexeme, expression.left, expression.right);
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        buffer.append("(").append(expression.operator.lexeme).append(" ");
+        work.push(")");
+        work.push(expression.right);
+        work.push(" ");
+        work.push(expression.left);
+        return null;
     }
 
     @Override
-    public String visitGroupingExpression(Expression.Grouping expression) {
-        return parenthesize("group", expression.expression);
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        buffer.append("(group ");
+        work.push(")");
+        work.push(expression.expression);
+        return null;
     }
 
     @Override
-    public String visitLiteralExpression(Expression.Literal expression) {
+    public Void visitLiteralExpression(Expression.Literal expression) {
         if (expression.value == null) {
-            return "nil";
+            buffer.append("nil");
+        } else {
+            buffer.append(expression.value.toString());
         }
 
-        return expression.value.toString();
+        return null;
     }
 
     @Override
-    public String visitUnaryExpression(Expression.Unary expression) {
-        return parenthesize(expression.operator.lexeme, expression.right);
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        buffer.append("(").append(expression.operator.lexeme).append(" ");
+        work.push(")");
+        work.push(expression.right);
+        return null;
     }
 
-    private String parenthesize(String name, Expression... expressions) {
-        StringBuilder builder = new StringBuilder();
+    private void walk(FlatAst ast, Writer out) throws IOException {
+        for (int i = 0; i < ast.statementCount(); i++) {
+            if (i > 0) {
+                buffer.append('\n');
+            }
+
+            walk(ast, ast.statement(i), out);
+        }
+    }
+
+    private void walk(FlatAst ast, int root, Writer out) throws IOException {
+        int top = 0;
+        flatWork[top++] = root;
+
+        while (top > 0) {
+            // At most three entries get pushed per entry popped
+            if (top + 3 > flatWork.length) {
+                flatWork = Arrays.copyOf(flatWork, flatWork.length * 2);
+            }
 
-        builder.append("(").append(name);
+            int node = flatWork[--top];
 
-        for (Expression expression : expressions) {
-            builder.append(" ");
-            builder.append(expression.accept(this)); // Recursion to print entire tree
+            if (node == CLOSE) {
+                buffer.append(')');
+            } else if (node == SPACE) {
+                buffer.append(' ');
+            } else {
+                switch (ast.kind(node)) {
+                case FlatAst.BINARY:
+                    buffer.append("(").append(ast.operator(node).lexeme).append(" ");
+                    flatWork[top++] = CLOSE;
+                    flatWork[top++] = ast.right(node);
+                    flatWork[top++] = SPACE;
+                    flatWork[top++] = ast.left(node);
+                    break;
+                case FlatAst.GROUPING:
+                    buffer.append("(group ");
+                    flatWork[top++] = CLOSE;
+                    flatWork[top++] = ast.left(node);
+                    break;
+                case FlatAst.NUMBER:
+                    buffer.append(ast.number(node));
+                    break;
+                case FlatAst.VALUE:
+                    Object value = ast.value(node);
+                    buffer.append(value == null ? "nil" : value.toString());
+                    break;
+                default:
+                    buffer.append("(").append(ast.operator(node).lexeme).append(" ");
+                    flatWork[top++] = CLOSE;
+                    flatWork[top++] = ast.left(node);
+                }
+            }
+
+            if (out != null && buffer.length() >= FLUSH_SIZE) {
+                flush(out);
+            }
+        }
+    }
+
+    /**
+     * Move the buffered output to the Writer
+     */
+    private void flush(Writer out) throws IOException {
+        int length = buffer.length();
+
+        if (chars.length < length) {
+            chars = new char[length];
         }
 
-        builder.append(")");
+        buffer.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        buffer.setLength(0);
+    }
+
+    private void reset() {
+        buffer.setLength(0);
+        work.clear();
 
-        return builder.toString();
+        // Don't hang on to the memory of one huge tree
+        if (buffer.capacity() > FLUSH_SIZE * 4) {
+            buffer.trimToSize();
+        }
     }
 
     public static void main(String[] args) {
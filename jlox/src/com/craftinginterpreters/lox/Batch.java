@@ -0,0 +1,191 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Runs many scripts in one JVM, a bounded number at a time. Every script gets
+ * its own LoxContext, so errors and output stay apart. The output of each script
+ * is collected and printed in one piece under a header, in the order the
+ * scripts were given, as soon as it and all scripts before it are done.
+ */
+class Batch {
+    // sysexits.h EX_IOERR, for scripts that can't be read
+    private static final int IO_ERROR = 74;
+
+    private final int jobs;
+    private final LoxContext.Options options;
+    // Totals to add the metrics of every run to, or null
+    private final Metrics metrics;
+
+    /**
+     * @param jobs    How many scripts to run at the same time
+     * @param options Settings every script runs with
+     * @param metrics Where to add up the metrics of all runs, or null
+     */
+    Batch(int jobs, LoxContext.Options options, Metrics metrics) {
+        this.jobs = Math.max(1, jobs);
+        this.options = options;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Outcome of one script
+     */
+    private record Result(Path script, int status, String output) {
+    }
+
+    /**
+     * Run scripts and print their output
+     *
+     * @param arguments Directories (searched for .lox files), scripts, or files
+     *                  listing one script per line
+     * @return Exit code: the highest of the scripts' exit codes
+     */
+    int run(List<String> arguments) {
+        List<Path> scripts = new ArrayList<>();
+
+        for (String argument : arguments) {
+            try {
+                collect(Paths.get(argument), scripts);
+            } catch (IOException error) {
+                System.err.println("Can't read " + argument + ": " + error.getMessage());
+                return IO_ERROR;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, Math.max(1, scripts.size())));
+        int status = 0;
+        int[] counts = new int[4];
+
+        try {
+            List<Future<Result>> results = new ArrayList<>();
+
+            for (Path script : scripts) {
+                results.add(pool.submit(() -> runScript(script)));
+            }
+
+            for (Future<Result> future : results) {
+                Result result = await(future);
+
+                System.out.println("==> " + result.script() + ": " + describe(result.status()));
+                System.out.print(result.output());
+                System.out.flush();
+
+                status = Math.max(status, result.status());
+                counts[kind(result.status())]++;
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.println(scripts.size() + " scripts: " + counts[0] + " ok, " + counts[1] + " with syntax errors, "
+                + counts[2] + " with runtime errors, " + counts[3] + " unreadable");
+
+        return status;
+    }
+
+    /**
+     * Run a script on the calling thread, in a context of its own
+     */
+    private Result runScript(Path script) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        // Errors go to the same stream, so they stay in place between the results
+        PrintStream output = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        LoxContext context = new LoxContext(output, output::println, options);
+        int status;
+
+        try {
+            Lox.runScript(script, context);
+            status = context.exitCode();
+        } catch (IOException error) {
+            output.println("Can't read " + script + ": " + error.getMessage());
+            status = IO_ERROR;
+        } catch (RuntimeException | StackOverflowError error) {
+            // A script that crashes the interpreter must not take the others down
+            output.println("Internal error: " + error);
+            status = 70;
+        }
+
+        if (metrics != null) {
+            metrics.add(context.metrics);
+        }
+
+        output.flush();
+
+        return new Result(script, status, buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Add the scripts an argument stands for
+     */
+    private static void collect(Path path, List<Path> scripts) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(file -> file.toString().endsWith(".lox") && Files.isRegularFile(file)).sorted()
+                        .forEach(scripts::add);
+            }
+        } else if (path.toString().endsWith(".lox")) {
+            scripts.add(path);
+        } else {
+            // A list of scripts; blank lines and lines starting with # are skipped
+            for (String line : Files.readAllLines(path)) {
+                line = line.trim();
+
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    scripts.add(Paths.get(line));
+                }
+            }
+        }
+    }
+
+    private static Result await(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(error);
+        } catch (ExecutionException error) {
+            // runScript() catches everything a script can cause
+            throw new IllegalStateException(error.getCause());
+        }
+    }
+
+    private static int kind(int status) {
+        switch (status) {
+        case 0:
+            return 0;
+        case 65:
+            return 1;
+        case 70:
+            return 2;
+        default:
+            return 3;
+        }
+    }
+
+    private static String describe(int status) {
+        switch (status) {
+        case 0:
+            return "ok";
+        case 65:
+            return "syntax error (65)";
+        case 70:
+            return "runtime error (70)";
+        default:
+            return "unreadable (" + status + ")";
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Source text backed by the raw bytes of a UTF-8 file, e.g. a memory-mapped one.
+ * Everything the scanners look for is ASCII, so all offsets are byte offsets
+ * and charAt() hands out ASCII bytes as they are. A character of more than one
+ * byte is decoded at its first byte, and its other bytes read as spaces, so it
+ * is still one unexpected character outside of string literals and comments.
+ * Bytes that aren't part of a valid sequence read as themselves. Only the
+ * pieces that are cut out for lexemes get decoded as a whole
+ */
+class ByteSource implements CharSequence {
+    private final ByteBuffer bytes;
+
+    ByteSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        byte character = bytes.get(index);
+
+        if (character >= 0) {
+            return (char) character;
+        }
+
+        return decode(index);
+    }
+
+    /**
+     * @param index Offset of a byte that isn't ASCII
+     * @return The character a sequence starting at <b>index</b> decodes to, a
+     *         space if the byte continues a sequence, or else the byte itself
+     */
+    private char decode(int index) {
+        // A sequence is at most four bytes, so its first one is at most three back
+        for (int start = index; start >= Math.max(0, index - 3); start--) {
+            int lead = bytes.get(start) & 0xff;
+
+            if (isContinuation(lead)) {
+                continue;
+            }
+
+            int length = sequenceLength(start);
+
+            if (length == 1 || index >= start + length) {
+                break;
+            }
+
+            if (index > start) {
+                return ' ';
+            }
+
+            // The value bits of the lead byte, then six bits per continuation byte
+            int codePoint = lead & (0x7f >> length);
+
+            for (int i = 1; i < length; i++) {
+                codePoint = (codePoint << 6) | (bytes.get(start + i) & 0x3f);
+            }
+
+            return Character.isBmpCodePoint(codePoint) ? (char) codePoint : Character.highSurrogate(codePoint);
+        }
+
+        return (char) (bytes.get(index) & 0xff);
+    }
+
+    /**
+     * @return How many bytes the sequence at <b>start</b> has, or 1 if it isn't
+     *         a valid one
+     */
+    private int sequenceLength(int start) {
+        int lead = bytes.get(start) & 0xff;
+        int length;
+
+        if (lead >= 0xc2 && lead <= 0xdf) {
+            length = 2;
+        } else if (lead >= 0xe0 && lead <= 0xef) {
+            length = 3;
+        } else if (lead >= 0xf0 && lead <= 0xf4) {
+            length = 4;
+        } else {
+            return 1;
+        }
+
+        if (start + length > bytes.limit()) {
+            return 1;
+        }
+
+        for (int i = 1; i < length; i++) {
+            if (!isContinuation(bytes.get(start + i) & 0xff)) {
+                return 1;
+            }
+        }
+
+        return length;
+    }
+
+    private static boolean isContinuation(int character) {
+        return (character & 0xc0) == 0x80;
+    }
+
+    /**
+     * Decodes a range of bytes
+     *
+     * @param start Start offset (inclusive)
+     * @param end   End offset (exclusive)
+     * @return The decoded String
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+
+        // Lexemes are nearly always ASCII, which needs no real decoding
+        for (byte character : text) {
+            if (character < 0) {
+                return new String(text, StandardCharsets.UTF_8);
+            }
+        }
+
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
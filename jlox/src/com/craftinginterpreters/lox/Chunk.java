@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * A compiled expression: flat bytecode plus the constant pools it refers to
+ */
+class Chunk {
+    byte[] code = new byte[64];
+    int count = 0;
+
+    // Operator token of every instruction that can fail, for error reporting
+    Token[] tokens = new Token[64];
+
+    // Constant pools: numbers unboxed, everything else (strings) as objects
+    double[] numbers = new double[16];
+    int numberCount = 0;
+    Object[] constants = new Object[16];
+    int constantCount = 0;
+
+    // Deepest the stack gets while running this chunk
+    int maxStack = 0;
+
+    /**
+     * Appends a byte to the code
+     *
+     * @param value The byte
+     * @param token Operator token for error reporting, or null
+     */
+    void write(byte value, Token token) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            tokens = Arrays.copyOf(tokens, count * 2);
+        }
+
+        code[count] = value;
+        tokens[count] = token;
+        count++;
+    }
+
+    /**
+     * @return Index of the number in the pool
+     */
+    int addNumber(double value) {
+        if (numberCount == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numberCount * 2);
+        }
+
+        numbers[numberCount] = value;
+
+        return numberCount++;
+    }
+
+    /**
+     * @return Index of the constant in the pool
+     */
+    int addConstant(Object value) {
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+
+        constants[constantCount] = value;
+
+        return constantCount++;
+    }
+}
@@ -0,0 +1,152 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles an expression tree into bytecode for the VM. Stack code is the tree
+ * in post-order, so the tree is walked with PostOrder and each node only emits
+ * its own instruction; there is no recursion, and trees of any depth compile
+ */
+class Compiler implements Expression.Visitor<Void> {
+    private Chunk chunk;
+    private int stackDepth;
+    private final PostOrder order = new PostOrder();
+
+    // Every distinct constant is stored once
+    private final Map<Double, Integer> numberIndexes = new HashMap<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    /**
+     * @param expression The expression
+     * @return The compiled chunk
+     */
+    Chunk compile(Expression expression) {
+        chunk = new Chunk();
+        stackDepth = 0;
+        numberIndexes.clear();
+        constantIndexes.clear();
+
+        compileExpression(expression);
+        emit(OpCode.RETURN, null);
+
+        return chunk;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        switch (expression.operator.type) {
+        case BANG_EQUAL:
+            emit(OpCode.NOT_EQUAL, expression.operator);
+            break;
+        case EQUAL_EQUAL:
+            emit(OpCode.EQUAL, expression.operator);
+            break;
+        case GREATER:
+            emit(OpCode.GREATER, expression.operator);
+            break;
+        case GREATER_EQUAL:
+            emit(OpCode.GREATER_EQUAL, expression.operator);
+            break;
+        case LESS:
+            emit(OpCode.LESS, expression.operator);
+            break;
+        case LESS_EQUAL:
+            emit(OpCode.LESS_EQUAL, expression.operator);
+            break;
+        case MINUS:
+            emit(OpCode.SUBTRACT, expression.operator);
+            break;
+        case PLUS:
+            emit(OpCode.ADD, expression.operator);
+            break;
+        case SLASH:
+            emit(OpCode.DIVIDE, expression.operator);
+            break;
+        case STAR:
+            emit(OpCode.MULTIPLY, expression.operator);
+            break;
+        default:
+            throw new IllegalStateException("Unknown binary operator: " + expression.operator.type);
+        }
+
+        // Two operands in, one result out
+        stackDepth--;
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        // The operand is on the stack already and stays the result
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        Object value = expression.value;
+
+        if (value == null) {
+            emit(OpCode.NIL, null);
+        } else if (value instanceof Boolean) {
+            emit((boolean) value ? OpCode.TRUE : OpCode.FALSE, null);
+        } else if (value instanceof Double) {
+            int index = numberIndexes.computeIfAbsent((Double) value, number -> chunk.addNumber(number));
+            emitIndexed(OpCode.NUMBER, OpCode.NUMBER_WIDE, index);
+        } else {
+            int index = constantIndexes.computeIfAbsent(value, constant -> chunk.addConstant(constant));
+            emitIndexed(OpCode.CONSTANT, OpCode.CONSTANT_WIDE, index);
+        }
+
+        stackDepth++;
+        chunk.maxStack = Math.max(chunk.maxStack, stackDepth);
+
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        switch (expression.operator.type) {
+        case BANG:
+            emit(OpCode.NOT, expression.operator);
+            break;
+        case MINUS:
+            emit(OpCode.NEGATE, expression.operator);
+            break;
+        default:
+            throw new IllegalStateException("Unknown unary operator: " + expression.operator.type);
+        }
+
+        return null;
+    }
+
+    private void compileExpression(Expression expression) {
+        order.start(expression);
+
+        for (Expression node = order.next(); node != null; node = order.next()) {
+            node.accept(this);
+        }
+    }
+
+    private void emit(byte opCode, Token token) {
+        chunk.write(opCode, token);
+    }
+
+    /**
+     * Emits an instruction with a pool index: two bytes if that's enough,
+     * otherwise the wide form with four
+     */
+    private void emitIndexed(byte opCode, byte wideOpCode, int index) {
+        if (index <= 0xffff) {
+            emit(opCode, null);
+            emit((byte) (index >> 8), null);
+            emit((byte) index, null);
+        } else {
+            emit(wideOpCode, null);
+            emit((byte) (index >> 24), null);
+            emit((byte) (index >> 16), null);
+            emit((byte) (index >> 8), null);
+            emit((byte) index, null);
+        }
+    }
+}
@@ -12,6 +12,7 @@ abstract class Expression {
 
     static class Binary extends Expression {
         Binary(Expression left, Token operator, Expression right) {
+            super(NumericCheck.binary(left, operator, right), 2);
             this.left = left;
             this.operator = operator;
             this.right = right;
@@ -22,6 +23,18 @@ abstract class Expression {
             return visitor.visitBinaryExpression(this);
         }
 
+        @Override
+        Expression child(int index) {
+            switch (index) {
+            case 0:
+                return left;
+            case 1:
+                return right;
+            default:
+                throw new IndexOutOfBoundsException("Binary has no child " + index);
+            }
+        }
+
         final Expression left;
         final Token operator;
         final Expression right;
@@ -29,6 +42,7 @@ abstract class Expression {
 
     static class Grouping extends Expression {
         Grouping(Expression expression) {
+            super(NumericCheck.grouping(expression), 1);
             this.expression = expression;
         }
 
@@ -37,11 +51,22 @@ abstract class Expression {
             return visitor.visitGroupingExpression(this);
         }
 
+        @Override
+        Expression child(int index) {
+            switch (index) {
+            case 0:
+                return expression;
+            default:
+                throw new IndexOutOfBoundsException("Grouping has no child " + index);
+            }
+        }
+
         final Expression expression;
     }
 
     static class Literal extends Expression {
         Literal(Object value) {
+            super(NumericCheck.literal(value), 0);
             this.value = value;
         }
 
@@ -50,11 +75,17 @@ abstract class Expression {
             return visitor.visitLiteralExpression(this);
         }
 
+        @Override
+        Expression child(int index) {
+            throw new IndexOutOfBoundsException("Literal has no child " + index);
+        }
+
         final Object value;
     }
 
     static class Unary extends Expression {
         Unary(Token operator, Expression right) {
+            super(NumericCheck.unary(operator, right), 1);
             this.operator = operator;
             this.right = right;
         }
@@ -64,10 +95,47 @@ abstract class Expression {
             return visitor.visitUnaryExpression(this);
         }
 
+        @Override
+        Expression child(int index) {
+            switch (index) {
+            case 0:
+                return right;
+            default:
+                throw new IndexOutOfBoundsException("Unary has no child " + index);
+            }
+        }
+
         final Token operator;
         final Expression right;
     }
 
 
     abstract <R> R accept (Visitor<R> visitor);
+
+    /**
+     * @return The child node at index, counted from the left
+     */
+    abstract Expression child(int index);
+
+    private final boolean numeric;
+    private final int childCount;
+
+    Expression(boolean numeric, int childCount) {
+        this.numeric = numeric;
+        this.childCount = childCount;
+    }
+
+    /**
+     * @return Whether the expression is statically known to produce a number
+     */
+    final boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * @return How many child nodes the expression has
+     */
+    final int childCount() {
+        return childCount;
+    }
 }
@@ -0,0 +1,142 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format for Expression trees. Generated by GenerateAst, so it stays
+ * in sync with the node types. Nodes are written children first, and END after
+ * the root, so trees of any depth can be written and read without recursion
+ */
+class ExpressionSerializer implements Expression.Visitor<Void> {
+    private static final int BINARY = 0;
+    private static final int GROUPING = 1;
+    private static final int LITERAL = 2;
+    private static final int UNARY = 3;
+    private static final int END = 4;
+
+    private final AstEncoder encoder;
+    private final PostOrder order = new PostOrder();
+
+    private ExpressionSerializer(AstEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    static ByteBuffer serialize(Expression expression) {
+        AstEncoder encoder = new AstEncoder();
+        new ExpressionSerializer(encoder).write(expression);
+
+        return encoder.finish();
+    }
+
+    static Expression deserialize(ByteBuffer input) {
+        return read(new AstDecoder(input), new ArrayDeque<>());
+    }
+
+    static ByteBuffer serializeAll(List<Expression> expressions) {
+        AstEncoder encoder = new AstEncoder();
+        ExpressionSerializer serializer = new ExpressionSerializer(encoder);
+        encoder.writeCount(expressions.size());
+
+        for (Expression expression : expressions) {
+            serializer.write(expression);
+        }
+
+        return encoder.finish();
+    }
+
+    static List<Expression> deserializeAll(ByteBuffer input) {
+        AstDecoder decoder = new AstDecoder(input);
+        ArrayDeque<Expression> stack = new ArrayDeque<>();
+        int count = decoder.readCount();
+        List<Expression> expressions = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            expressions.add(read(decoder, stack));
+        }
+
+        return expressions;
+    }
+
+    private void write(Expression expression) {
+        order.start(expression);
+
+        for (Expression node = order.next(); node != null; node = order.next()) {
+            node.accept(this);
+        }
+
+        encoder.writeTag(END);
+    }
+
+    /**
+     * Read one tree
+     *
+     * @param stack Nodes read but not given a parent yet; empty between trees
+     */
+    private static Expression read(AstDecoder decoder, ArrayDeque<Expression> stack) {
+        for (int tag = decoder.readTag(); tag != END; tag = decoder.readTag()) {
+            switch (tag) {
+            case BINARY: {
+                Expression right = stack.pop();
+                Expression left = stack.pop();
+                Token operator = decoder.readToken();
+                stack.push(new Expression.Binary(left, operator, right));
+                break;
+            }
+            case GROUPING: {
+                Expression expression = stack.pop();
+                stack.push(new Expression.Grouping(expression));
+                break;
+            }
+            case LITERAL: {
+                Object value = decoder.readValue();
+                stack.push(new Expression.Literal(value));
+                break;
+            }
+            case UNARY: {
+                Expression right = stack.pop();
+                Token operator = decoder.readToken();
+                stack.push(new Expression.Unary(operator, right));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown Expression tag " + tag);
+            }
+        }
+
+        return stack.pop();
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        encoder.writeTag(BINARY);
+        encoder.writeToken(expression.operator);
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        encoder.writeTag(GROUPING);
+
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        encoder.writeTag(LITERAL);
+        encoder.writeValue(expression.value);
+
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        encoder.writeTag(UNARY);
+        encoder.writeToken(expression.operator);
+
+        return null;
+    }
+}
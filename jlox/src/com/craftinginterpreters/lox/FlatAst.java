@@ -0,0 +1,275 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Program stored in parallel arrays instead of one object per node. Nodes are
+ * ints; children always come before their parent, which is what the Parser
+ * produces anyway, and each statement's nodes follow those of the one before.
+ * Walking the tree touches a few dense arrays instead of objects scattered over
+ * the heap, and a whole tree is only a handful of allocations.
+ *
+ * Whether a node is statically numeric (see NumericCheck) is worked out while
+ * the tree is built, so evaluating needs no side table.
+ */
+class FlatAst implements AstBuilder {
+    // Node kinds
+    static final byte BINARY = 0;
+    static final byte GROUPING = 1;
+    // Number literal, value in numbers[]
+    static final byte NUMBER = 2;
+    // Any other literal, value in values[]
+    static final byte VALUE = 3;
+    static final byte UNARY = 4;
+
+    private byte[] kinds;
+    // Only child of grouping and unary, left child of binary
+    private int[] lefts;
+    private int[] rights;
+    private Token[] operators;
+    private double[] numbers;
+    private Object[] values;
+    private boolean[] numeric;
+    private int count = 0;
+    // Root node of every statement, in order
+    private int[] statements = new int[8];
+    private int statementCount = 0;
+
+    FlatAst() {
+        this(64);
+    }
+
+    FlatAst(int capacity) {
+        kinds = new byte[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        operators = new Token[capacity];
+        numbers = new double[capacity];
+        values = new Object[capacity];
+        numeric = new boolean[capacity];
+    }
+
+    /**
+     * Flatten a program
+     *
+     * @param statements The statements
+     * @return The same trees as a FlatAst
+     */
+    static FlatAst of(List<Expression> statements) {
+        FlatAst ast = new FlatAst();
+        Flattener flattener = ast.new Flattener();
+
+        for (Expression statement : statements) {
+            ast.addStatement(flattener.add(statement));
+        }
+
+        return ast;
+    }
+
+    /**
+     * Adds whole trees, children first. It's a visitor, so it has to handle every
+     * node type
+     */
+    private class Flattener implements Expression.Visitor<Void> {
+        private final PostOrder order = new PostOrder();
+        // Handles of the nodes added but not yet given a parent
+        private int[] handles = new int[64];
+        private int top = 0;
+
+        /**
+         * @return Handle of the root
+         */
+        int add(Expression expression) {
+            order.start(expression);
+
+            for (Expression node = order.next(); node != null; node = order.next()) {
+                node.accept(this);
+            }
+
+            return handles[--top];
+        }
+
+        private void push(int handle) {
+            if (top == handles.length) {
+                handles = Arrays.copyOf(handles, top * 2);
+            }
+
+            handles[top++] = handle;
+        }
+
+        @Override
+        public Void visitBinaryExpression(Expression.Binary expression) {
+            int right = handles[--top];
+            push(binary(handles[--top], expression.operator, right));
+
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpression(Expression.Grouping expression) {
+            push(grouping(handles[--top]));
+
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpression(Expression.Literal expression) {
+            if (expression.value instanceof Double) {
+                push(number((double) expression.value));
+            } else {
+                push(literal(expression.value));
+            }
+
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpression(Expression.Unary expression) {
+            push(unary(expression.operator, handles[--top]));
+
+            return null;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Drop all nodes from the given one on, e.g. those of a statement that turned
+     * out to have a syntax error
+     *
+     * @param size Number of nodes to keep
+     */
+    void truncate(int size) {
+        Arrays.fill(operators, size, count, null);
+        Arrays.fill(values, size, count, null);
+        Arrays.fill(numeric, size, count, false);
+        count = size;
+    }
+
+    /**
+     * Append a statement. Its nodes have to follow those of the statement before
+     *
+     * @param root Root node of the statement
+     */
+    void addStatement(int root) {
+        if (statementCount == statements.length) {
+            statements = Arrays.copyOf(statements, statementCount * 2);
+        }
+
+        statements[statementCount++] = root;
+    }
+
+    int statementCount() {
+        return statementCount;
+    }
+
+    /**
+     * @return Root node of a statement
+     */
+    int statement(int index) {
+        return statements[index];
+    }
+
+    /**
+     * @return First node of a statement; its nodes run up to its root
+     */
+    int statementStart(int index) {
+        return index == 0 ? 0 : statements[index - 1] + 1;
+    }
+
+    byte kind(int node) {
+        return kinds[node];
+    }
+
+    int left(int node) {
+        return lefts[node];
+    }
+
+    int right(int node) {
+        return rights[node];
+    }
+
+    Token operator(int node) {
+        return operators[node];
+    }
+
+    double number(int node) {
+        return numbers[node];
+    }
+
+    Object value(int node) {
+        return values[node];
+    }
+
+    /**
+     * @return Whether the node statically produces a number
+     */
+    boolean isNumeric(int node) {
+        return numeric[node];
+    }
+
+    @Override
+    public int binary(int left, Token operator, int right) {
+        int node = add(BINARY);
+        lefts[node] = left;
+        rights[node] = right;
+        operators[node] = operator;
+
+        numeric[node] = NumericCheck.binary(numeric[left], operator, numeric[right]);
+
+        return node;
+    }
+
+    @Override
+    public int grouping(int expression) {
+        int node = add(GROUPING);
+        lefts[node] = expression;
+        numeric[node] = NumericCheck.grouping(numeric[expression]);
+        return node;
+    }
+
+    @Override
+    public int literal(Object value) {
+        int node = add(VALUE);
+        values[node] = value;
+        numeric[node] = NumericCheck.literal(value);
+        return node;
+    }
+
+    @Override
+    public int number(double value) {
+        int node = add(NUMBER);
+        numbers[node] = value;
+        numeric[node] = NumericCheck.literal(value);
+        return node;
+    }
+
+    @Override
+    public int unary(Token operator, int right) {
+        int node = add(UNARY);
+        lefts[node] = right;
+        operators[node] = operator;
+        numeric[node] = NumericCheck.unary(operator, numeric[right]);
+        return node;
+    }
+
+    private int add(byte kind) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            operators = Arrays.copyOf(operators, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            values = Arrays.copyOf(values, capacity);
+            numeric = Arrays.copyOf(numeric, capacity);
+        }
+
+        kinds[count] = kind;
+
+        return count++;
+    }
+}
@@ -0,0 +1,136 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+import static com.craftinginterpreters.lox.FlatAst.*;
+
+/**
+ * Evaluator for FlatAst. Same semantics as Interpreter, whose operators it
+ * calls, including unboxed arithmetic for numeric subtrees, but without any
+ * recursion: children always come before their parent in a FlatAst, so one
+ * pass over the nodes in order evaluates every node after its operands, in the
+ * same order a recursive walk would. Trees of any depth can be evaluated.
+ */
+class FlatInterpreter {
+    // Result of every node, in numbers[] if the node is numeric
+    private double[] numbers = new double[64];
+    private Object[] values = new Object[64];
+
+    private final LoxContext context;
+
+    /**
+     * @param context Session the results and errors go to
+     */
+    FlatInterpreter(LoxContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Evaluate every statement and print its result
+     *
+     * @param ast The program
+     */
+    void interpret(FlatAst ast) {
+        try {
+            for (int i = 0; i < ast.statementCount(); i++) {
+                Object value = evaluate(ast, i);
+                context.out.println(Interpreter.stringify(value));
+            }
+        } catch (RuntimeError error) {
+            context.runtimeError(error);
+        }
+    }
+
+    /**
+     * Evaluate one statement
+     *
+     * @param statement Index of the statement
+     * @return The value
+     */
+    Object evaluate(FlatAst ast, int statement) {
+        int start = ast.statementStart(statement);
+        int root = ast.statement(statement);
+
+        if (numbers.length <= root) {
+            numbers = new double[ast.size()];
+            values = new Object[ast.size()];
+        }
+
+        try {
+            for (int node = start; node <= root; node++) {
+                if (ast.isNumeric(node)) {
+                    numbers[node] = evaluateNumber(ast, node);
+                } else {
+                    values[node] = evaluateNode(ast, node);
+                }
+            }
+
+            return value(ast, root);
+        } finally {
+            // Don't keep the values alive
+            Arrays.fill(values, start, root + 1, null);
+        }
+    }
+
+    /**
+     * Result of a node that has already been evaluated
+     */
+    private Object value(FlatAst ast, int node) {
+        if (ast.isNumeric(node)) {
+            return numbers[node];
+        }
+
+        return values[node];
+    }
+
+    private Object evaluateNode(FlatAst ast, int node) {
+        switch (ast.kind(node)) {
+        case BINARY:
+            return evaluateBinary(ast, node);
+        case GROUPING:
+            return value(ast, ast.left(node));
+        case VALUE:
+            return ast.value(node);
+        default:
+            return evaluateUnary(ast, node);
+        }
+    }
+
+    private Object evaluateBinary(FlatAst ast, int node) {
+        Token operator = ast.operator(node);
+        int left = ast.left(node);
+        int right = ast.right(node);
+
+        if (ast.isNumeric(left) && ast.isNumeric(right)) {
+            // Only comparisons get here, arithmetic would be numeric itself
+            return Interpreter.compare(operator, numbers[left], numbers[right]);
+        }
+
+        return Interpreter.binary(operator, value(ast, left), value(ast, right));
+    }
+
+    private Object evaluateUnary(FlatAst ast, int node) {
+        return Interpreter.unary(ast.operator(node), value(ast, ast.left(node)));
+    }
+
+    /**
+     * Evaluate a node that is statically numeric, its operands are in numbers[]
+     *
+     * @return The value, unboxed
+     */
+    private double evaluateNumber(FlatAst ast, int node) {
+        switch (ast.kind(node)) {
+        case NUMBER:
+            return ast.number(node);
+        case GROUPING:
+            return numbers[ast.left(node)];
+        case UNARY:
+            // A numeric unary is always a negation
+            return -numbers[ast.left(node)];
+        default:
+            break;
+        }
+
+        return Interpreter.arithmetic(ast.operator(node), numbers[ast.left(node)], numbers[ast.right(node)]);
+    }
+}
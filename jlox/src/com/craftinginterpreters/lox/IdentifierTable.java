@@ -0,0 +1,94 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Interns identifier lexemes while scanning. Lookups hash and compare the chars
+ * in the source directly, so a name that was seen before doesn't allocate a new
+ * String
+ */
+class IdentifierTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Open addressing with linear probing; capacity is always a power of two
+    private String[] entries = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int count = 0;
+
+    /**
+     * @param source The source text
+     * @param start  Offset of the identifier (inclusive)
+     * @param end    End of the identifier (exclusive)
+     * @return The one String instance for this name
+     */
+    String intern(CharSequence source, int start, int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = entries.length - 1;
+        int index = spread(hash) & mask;
+
+        while (entries[index] != null) {
+            if (hashes[index] == hash && matches(entries[index], source, start, end)) {
+                return entries[index];
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        String lexeme = source.subSequence(start, end).toString();
+        entries[index] = lexeme;
+        hashes[index] = hash;
+        count++;
+
+        // Keep the load factor below 1/2
+        if (count * 2 > entries.length) {
+            grow();
+        }
+
+        return lexeme;
+    }
+
+    private static boolean matches(String entry, CharSequence source, int start, int end) {
+        if (entry.length() != end - start) {
+            return false;
+        }
+
+        for (int i = 0; i < entry.length(); i++) {
+            if (entry.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        String[] oldEntries = entries;
+        int[] oldHashes = hashes;
+
+        entries = new String[oldEntries.length * 2];
+        hashes = new int[oldEntries.length * 2];
+        int mask = entries.length - 1;
+
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] == null) {
+                continue;
+            }
+
+            int index = spread(oldHashes[i]) & mask;
+
+            while (entries[index] != null) {
+                index = (index + 1) & mask;
+            }
+
+            entries[index] = oldEntries[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a program parsed while its text is being edited, e.g. in an editor.
+ * The program is held as a list of statements, each with its tokens and tree.
+ * An edit only rescans and reparses the statements it touches: scanning starts
+ * at the end of the statement before the edit, which always lies between two
+ * tokens (not inside a string or comment), and stops at the first statement
+ * boundary behind the edit that is also a boundary in the old text. From there
+ * on the text is unchanged, so the old statements are reused as they are.
+ *
+ * Nothing about a reused statement depends on where it is. Its length and line
+ * count are kept relative to the end of the statement before it, in PrefixSums,
+ * which turn them into offsets and lines in O(log n). Its tokens are on lines
+ * relative to its first line, which statements() brings up to date. So work per
+ * edit is proportional to the size of the statements touched, apart from the
+ * text splice and, when statements come or go, moving the ones behind them in
+ * the list and in the sums; those are plain array moves.
+ *
+ * Every statement is scanned and parsed in a fork of the context, which tells
+ * the errors of one statement apart from the others.
+ */
+class IncrementalParser {
+    private final LoxContext context;
+    private final StringBuilder text = new StringBuilder();
+    private final List<Statement> statements = new ArrayList<>();
+    // Per statement: chars and line breaks from the end of the one before it to
+    // its own end
+    private final PrefixSums lengths = new PrefixSums();
+    private final PrefixSums lineCounts = new PrefixSums();
+    // Errors in the text after the last statement, e.g. an unterminated string
+    private boolean trailingError = false;
+
+    /**
+     * Statement with the tokens up to and including its ';' (or the end of the
+     * text), followed by EOF for the parser
+     */
+    private static class Statement {
+        List<Token> tokens;
+        // null if the statement has a syntax error
+        Expression expression;
+        boolean hadError;
+        // Whether it ends in ';' rather than at the end of the text
+        boolean terminated;
+        // See lengths and lineCounts
+        int length;
+        int lineCount;
+        // Line where scanning the statement started; its tokens are relative to it
+        int line;
+    }
+
+    /**
+     * Token on a line relative to the start of its statement
+     */
+    private static final class StatementToken extends Token {
+        private final Statement statement;
+
+        StatementToken(Token token, Statement statement) {
+            super(token.type, token.lexeme, token.literal, token.line() - statement.line);
+            this.statement = statement;
+        }
+
+        @Override
+        int line() {
+            return statement.line + super.line();
+        }
+    }
+
+    /**
+     * @param source  The initial text
+     * @param context Session the errors are reported to
+     */
+    IncrementalParser(CharSequence source, LoxContext context) {
+        this.context = context;
+        edit(0, 0, source.toString());
+    }
+
+    /**
+     * Apply a text edit and bring the statements up to date. Errors in rescanned
+     * statements are reported as usual
+     *
+     * @param offset   Where the edit starts
+     * @param removed  Number of chars removed at offset
+     * @param inserted Text inserted at offset
+     */
+    void edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside of " + text.length());
+        }
+
+        text.replace(offset, offset + removed, inserted);
+
+        int delta = inserted.length() - removed;
+        int oldEditEnd = offset + removed;
+        int newEditEnd = offset + inserted.length();
+
+        // The statement ending at offset is rescanned too, the edit may extend its
+        // last token. Scanning starts where the statement before it ends
+        int first = lengths.countBelow(offset);
+
+        // A last statement without ';' is continued by whatever comes after it
+        if (first > 0 && first == statements.size() && !statements.get(first - 1).terminated) {
+            first--;
+        }
+
+        int position = start(first);
+        int line = 1 + lineCounts.sum(first);
+
+        List<Statement> rescanned = new ArrayList<>();
+        // Old statements before this one have been replaced
+        int next = first;
+        boolean resynchronized = false;
+
+        while (true) {
+            if (position >= newEditEnd) {
+                // Past the edit; stop if an old statement starts here
+                while (next < statements.size() && start(next) + delta < position) {
+                    next++;
+                }
+
+                if (next < statements.size() && start(next) >= oldEditEnd && start(next) + delta == position) {
+                    resynchronized = true;
+                    break;
+                }
+            }
+
+            Statement statement = scanStatement(position, line);
+
+            if (statement == null) {
+                break;
+            }
+
+            rescanned.add(statement);
+            position += statement.length;
+            line += statement.lineCount;
+
+            if (!statement.terminated) {
+                // It ran to the end of the text, errors behind it included
+                trailingError = false;
+                break;
+            }
+        }
+
+        if (!resynchronized) {
+            next = statements.size();
+        }
+
+        // The statements behind keep their lengths and line counts: the text
+        // between the end of the last rescanned one and theirs hasn't changed
+        int[] newLengths = new int[rescanned.size()];
+        int[] newLineCounts = new int[rescanned.size()];
+
+        for (int i = 0; i < rescanned.size(); i++) {
+            newLengths[i] = rescanned.get(i).length;
+            newLineCounts[i] = rescanned.get(i).lineCount;
+        }
+
+        lengths.replace(first, next, newLengths, newLengths.length);
+        lineCounts.replace(first, next, newLineCounts, newLineCounts.length);
+        statements.subList(first, next).clear();
+        statements.addAll(first, rescanned);
+    }
+
+    /**
+     * @return The current text
+     */
+    CharSequence text() {
+        return text;
+    }
+
+    /**
+     * @return The statements that parse without errors
+     */
+    List<Expression> statements() {
+        List<Expression> program = new ArrayList<>(statements.size());
+
+        int line = 1;
+
+        for (Statement statement : statements) {
+            // Puts its tokens on the right lines
+            statement.line = line;
+            line += statement.lineCount;
+
+            if (statement.expression != null) {
+                program.add(statement.expression);
+            }
+        }
+
+        return program;
+    }
+
+    /**
+     * @return Whether any part of the text has a syntax error
+     */
+    boolean hasErrors() {
+        if (trailingError) {
+            return true;
+        }
+
+        for (Statement statement : statements) {
+            if (statement.hadError) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Scan and parse the next statement
+     *
+     * @param position Where the statement starts
+     * @param line     Line number at position
+     * @return The statement, or null at the end of the text
+     */
+    private Statement scanStatement(int position, int line) {
+        LoxContext fork = context.fork();
+        Scanner scanner = new Scanner(text, position, text.length(), line, fork);
+
+        try {
+            List<Token> tokens = new ArrayList<>();
+            Token token = scanner.nextToken();
+
+            if (token.type == TokenType.EOF) {
+                trailingError = fork.hadError;
+                return null;
+            }
+
+            Statement statement = new Statement();
+            statement.line = line;
+
+            while (true) {
+                tokens.add(new StatementToken(token, statement));
+                statement.length = scanner.position() - position;
+                statement.lineCount = scanner.line() - line;
+
+                if (token.type == TokenType.SEMICOLON) {
+                    statement.terminated = true;
+                    // Nothing of it is ever reported, the parser stops at the ';'
+                    tokens.add(new StatementToken(new Token(TokenType.EOF, "", null, token.line()), statement));
+                    break;
+                }
+
+                token = scanner.nextToken();
+
+                if (token.type == TokenType.EOF) {
+                    tokens.add(new StatementToken(token, statement));
+                    break;
+                }
+            }
+
+            statement.tokens = tokens;
+            statement.expression = parse(tokens, fork);
+            statement.hadError = fork.hadError;
+
+            return statement;
+        } finally {
+            context.join(fork);
+        }
+    }
+
+    /**
+     * @param tokens  Tokens of one statement, ending in ';' and EOF or just EOF
+     * @param context Session the errors are reported to
+     * @return The tree, or null on a syntax error
+     */
+    private static Expression parse(List<Token> tokens, LoxContext context) {
+        List<Expression> parsed = new Parser(tokens, context).parse();
+
+        return parsed.isEmpty() ? null : parsed.get(0);
+    }
+
+    /**
+     * @return Offset where scanning for a statement starts, which is where the one
+     *         before it ends
+     */
+    private int start(int index) {
+        return lengths.sum(index);
+    }
+}
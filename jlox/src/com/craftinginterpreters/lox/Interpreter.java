@@ -0,0 +1,458 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tree-walking evaluator. Subtrees that are statically numeric are evaluated
+ * with evaluateNumber(), which works on unboxed doubles all the way down.
+ *
+ * Recursing is the fastest way to walk a tree, but the thread's stack has to
+ * hold it, so it only goes MAX_DEPTH levels deep. A deeper tree is evaluated
+ * again from the start by walk(), which uses PostOrder and a stack of results
+ * instead and can evaluate trees of any depth. Expressions have no side effects,
+ * so evaluating one twice is safe.
+ */
+class Interpreter implements Expression.Visitor<Object> {
+    static final int MAX_DEPTH = 512;
+    private static final TooDeep TOO_DEEP = new TooDeep();
+
+    private final LoxContext context;
+    // How deep the recursion is
+    private int depth;
+
+    // For walk(): results not used by a parent yet, in numbers[] if the node is
+    // numeric and in values[] otherwise; the two share one stack pointer
+    private final PostOrder order = new PostOrder();
+    private double[] numbers = new double[64];
+    private Object[] values = new Object[64];
+    private int top;
+
+    /**
+     * @param context Session the results and errors go to
+     */
+    Interpreter(LoxContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Evaluate every statement and print its result
+     *
+     * @param statements The program
+     */
+    void interpret(List<Expression> statements) {
+        try {
+            for (Expression statement : statements) {
+                Object value = evaluate(statement);
+                context.out.println(stringify(value));
+            }
+        } catch (RuntimeError error) {
+            context.runtimeError(error);
+        }
+    }
+
+    @Override
+    public Object visitBinaryExpression(Expression.Binary expression) {
+        if (expression.left.isNumeric() && expression.right.isNumeric()) {
+            return evaluateNumbers(expression);
+        }
+
+        Object left = evaluateOperand(expression.left);
+        Object right = evaluateOperand(expression.right);
+
+        return binary(expression.operator, left, right);
+    }
+
+    @Override
+    public Object visitGroupingExpression(Expression.Grouping expression) {
+        return evaluateOperand(expression.expression);
+    }
+
+    @Override
+    public Object visitLiteralExpression(Expression.Literal expression) {
+        return expression.value;
+    }
+
+    @Override
+    public Object visitUnaryExpression(Expression.Unary expression) {
+        if (expression.isNumeric()) {
+            return evaluateNumber(expression);
+        }
+
+        return unary(expression.operator, evaluateOperand(expression.right));
+    }
+
+    /**
+     * Evaluate any expression
+     *
+     * @return The value
+     */
+    Object evaluate(Expression expression) {
+        depth = 0;
+
+        try {
+            return expression.accept(this);
+        } catch (TooDeep error) {
+            return walk(expression);
+        }
+    }
+
+    /**
+     * Evaluate an operand, one level deeper
+     */
+    private Object evaluateOperand(Expression operand) {
+        if (++depth > MAX_DEPTH) {
+            throw TOO_DEEP;
+        }
+
+        Object value = operand.accept(this);
+        depth--;
+
+        return value;
+    }
+
+    /**
+     * Binary expression with two numeric operands: the operands are evaluated
+     * unboxed, only the result gets boxed
+     */
+    private Object evaluateNumbers(Expression.Binary expression) {
+        double left = evaluateNumber(expression.left);
+        double right = evaluateNumber(expression.right);
+
+        if (expression.isNumeric()) {
+            return arithmetic(expression.operator, left, right);
+        }
+
+        return compare(expression.operator, left, right);
+    }
+
+    /**
+     * Evaluate an expression that is statically numeric
+     *
+     * @return The value, unboxed
+     */
+    private double evaluateNumber(Expression expression) {
+        if (expression instanceof Expression.Literal literal) {
+            return (double) literal.value;
+        }
+
+        if (++depth > MAX_DEPTH) {
+            throw TOO_DEEP;
+        }
+
+        double value;
+
+        if (expression instanceof Expression.Grouping grouping) {
+            value = evaluateNumber(grouping.expression);
+        } else if (expression instanceof Expression.Unary unary) {
+            // A numeric unary is always a negation
+            value = -evaluateNumber(unary.right);
+        } else {
+            Expression.Binary binary = (Expression.Binary) expression;
+            double left = evaluateNumber(binary.left);
+            double right = evaluateNumber(binary.right);
+
+            value = arithmetic(binary.operator, left, right);
+        }
+
+        depth--;
+
+        return value;
+    }
+
+    /**
+     * Evaluate an expression without recursion: every node is evaluated after
+     * its operands, whose results are on top of the stack
+     *
+     * @return The value
+     */
+    private Object walk(Expression expression) {
+        order.start(expression);
+        top = 0;
+
+        try {
+            for (Expression node = order.next(); node != null; node = order.next()) {
+                if (top == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, top * 2);
+                    values = Arrays.copyOf(values, top * 2);
+                }
+
+                // Operands are popped before the result is pushed
+                if (node.isNumeric()) {
+                    double number = walkNumber(node);
+                    numbers[top++] = number;
+                } else {
+                    Object value = walkNode(node);
+                    values[top++] = value;
+                }
+            }
+
+            return pop(expression);
+        } finally {
+            // Don't keep the values of a failed evaluation alive
+            Arrays.fill(values, 0, top, null);
+        }
+    }
+
+    private Object walkNode(Expression node) {
+        if (node instanceof Expression.Literal literal) {
+            return literal.value;
+        }
+
+        if (node instanceof Expression.Grouping grouping) {
+            return pop(grouping.expression);
+        }
+
+        if (node instanceof Expression.Unary unary) {
+            return unary(unary.operator, pop(unary.right));
+        }
+
+        Expression.Binary binary = (Expression.Binary) node;
+
+        if (binary.left.isNumeric() && binary.right.isNumeric()) {
+            // Only comparisons get here, arithmetic would be numeric itself
+            double right = numbers[--top];
+            double left = numbers[--top];
+
+            return compare(binary.operator, left, right);
+        }
+
+        Object right = pop(binary.right);
+        Object left = pop(binary.left);
+
+        return binary(binary.operator, left, right);
+    }
+
+    private double walkNumber(Expression node) {
+        if (node instanceof Expression.Literal literal) {
+            return (double) literal.value;
+        }
+
+        if (node instanceof Expression.Grouping) {
+            return numbers[--top];
+        }
+
+        // A numeric unary is always a negation
+        if (node instanceof Expression.Unary) {
+            return -numbers[--top];
+        }
+
+        double right = numbers[--top];
+        double left = numbers[--top];
+
+        return arithmetic(((Expression.Binary) node).operator, left, right);
+    }
+
+    /**
+     * Take the result of an operand off the stack, boxing it if it's numeric
+     *
+     * @param operand The node it's the result of
+     */
+    private Object pop(Expression operand) {
+        if (operand.isNumeric()) {
+            return numbers[--top];
+        }
+
+        Object value = values[--top];
+        values[top] = null;
+
+        return value;
+    }
+
+    /**
+     * Apply a binary operator to operands of any type, with the type checks.
+     * Every engine falls back on this, so they all report the same errors
+     */
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
+        case BANG_EQUAL:
+            return !isEqual(left, right);
+        case EQUAL_EQUAL:
+            return isEqual(left, right);
+        case GREATER:
+            checkNumberOperands(operator, left, right);
+            return (double) left > (double) right;
+        case GREATER_EQUAL:
+            checkNumberOperands(operator, left, right);
+            return (double) left >= (double) right;
+        case LESS:
+            checkNumberOperands(operator, left, right);
+            return (double) left < (double) right;
+        case LESS_EQUAL:
+            checkNumberOperands(operator, left, right);
+            return (double) left <= (double) right;
+        case MINUS:
+            checkNumberOperands(operator, left, right);
+            return (double) left - (double) right;
+        case PLUS:
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+
+            if (left instanceof LoxString && right instanceof LoxString) {
+                return ((LoxString) left).concat((LoxString) right);
+            }
+
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+        case SLASH:
+            checkNumberOperands(operator, left, right);
+            return (double) left / (double) right;
+        case STAR:
+            checkNumberOperands(operator, left, right);
+            return (double) left * (double) right;
+        default:
+            // Unreachable
+            return null;
+        }
+    }
+
+    /**
+     * Apply a unary operator to an operand of any type, with the type check
+     */
+    static Object unary(Token operator, Object right) {
+        switch (operator.type) {
+        case BANG:
+            return !isTruthy(right);
+        case MINUS:
+            checkNumberOperand(operator, right);
+            return -(double) right;
+        default:
+            // Unreachable
+            return null;
+        }
+    }
+
+    /**
+     * Apply +, -, * or / to numbers that are known to be numbers
+     */
+    static double arithmetic(Token operator, double left, double right) {
+        switch (operator.type) {
+        case MINUS:
+            return left - right;
+        case PLUS:
+            return left + right;
+        case SLASH:
+            return left / right;
+        case STAR:
+            return left * right;
+        default:
+            throw new IllegalStateException("Not a numeric operator: " + operator.type);
+        }
+    }
+
+    /**
+     * Apply a comparison or equality to operands that are known to be numbers
+     */
+    static boolean compare(Token operator, double left, double right) {
+        // Equality has to agree with isEqual(), i.e. Double.equals(): NaN equals
+        // itself and -0 doesn't equal 0
+        switch (operator.type) {
+        case BANG_EQUAL:
+            return Double.compare(left, right) != 0;
+        case EQUAL_EQUAL:
+            return Double.compare(left, right) == 0;
+        case GREATER:
+            return left > right;
+        case GREATER_EQUAL:
+            return left >= right;
+        case LESS:
+            return left < right;
+        case LESS_EQUAL:
+            return left <= right;
+        default:
+            throw new IllegalStateException("Not a comparison: " + operator.type);
+        }
+    }
+
+    /**
+     * Thrown when the recursion gets too deep. There is only one, without a
+     * stack trace, so throwing it is cheap
+     */
+    private static class TooDeep extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TooDeep() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Throws RuntimeError if operand isn't a number
+     *
+     * @param operator The operator token
+     * @param operand  The evaluated operand
+     */
+    static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) {
+            return;
+        }
+
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    /**
+     * Throws RuntimeError if either operand isn't a number
+     *
+     * @param operator The operator token
+     * @param left     The evaluated left operand
+     * @param right    The evaluated right operand
+     */
+    static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return;
+        }
+
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    /**
+     * false and nil are falsey, everything else is truthy
+     */
+    static boolean isTruthy(Object object) {
+        if (object == null) {
+            return false;
+        }
+
+        if (object instanceof Boolean) {
+            return (boolean) object;
+        }
+
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) {
+            return true;
+        }
+
+        if (a == null) {
+            return false;
+        }
+
+        return a.equals(b);
+    }
+
+    /**
+     * Turns a value into its Lox representation
+     *
+     * @param object The value
+     */
+    static String stringify(Object object) {
+        if (object == null) {
+            return "nil";
+        }
+
+        if (object instanceof Double) {
+            String text = object.toString();
+
+            // Print integers without the ".0"
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+
+            return text;
+        }
+
+        return object.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package com.craftinginterpreters.lox;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * Recognizes reserved words straight from the source characters, without
+ * cutting the identifier out first. Works like a hand-written trie: switch on
+ * the first (and, where needed, second) char, then compare the rest
+ */
+class Keywords {
+    private static final String[] lexemes = new String[TokenType.values().length];
+
+    static {
+        TokenType[] keywords = { AND, CLASS, ELSE, FALSE, FOR, FUN, IF, NIL, OR, PRINT, RETURN, SUPER, THIS, TRUE,
+                VAR, WHILE };
+
+        for (TokenType keyword : keywords) {
+            lexemes[keyword.ordinal()] = keyword.name().toLowerCase();
+        }
+    }
+
+    private Keywords() {
+    }
+
+    /**
+     * Classifies an identifier
+     *
+     * @param source The source text
+     * @param start  Offset of the identifier (inclusive)
+     * @param end    End of the identifier (exclusive)
+     * @return The keyword's TokenType, or IDENTIFIER if it isn't one
+     */
+    static TokenType type(CharSequence source, int start, int end) {
+        switch (source.charAt(start)) {
+        case 'a':
+            return check(source, start, end, 1, "nd", AND);
+        case 'c':
+            return check(source, start, end, 1, "lass", CLASS);
+        case 'e':
+            return check(source, start, end, 1, "lse", ELSE);
+        case 'f':
+            if (end - start > 1) {
+                switch (source.charAt(start + 1)) {
+                case 'a':
+                    return check(source, start, end, 2, "lse", FALSE);
+                case 'o':
+                    return check(source, start, end, 2, "r", FOR);
+                case 'u':
+                    return check(source, start, end, 2, "n", FUN);
+                }
+            }
+            break;
+        case 'i':
+            return check(source, start, end, 1, "f", IF);
+        case 'n':
+            return check(source, start, end, 1, "il", NIL);
+        case 'o':
+            return check(source, start, end, 1, "r", OR);
+        case 'p':
+            return check(source, start, end, 1, "rint", PRINT);
+        case 'r':
+            return check(source, start, end, 1, "eturn", RETURN);
+        case 's':
+            return check(source, start, end, 1, "uper", SUPER);
+        case 't':
+            if (end - start > 1) {
+                switch (source.charAt(start + 1)) {
+                case 'h':
+                    return check(source, start, end, 2, "is", THIS);
+                case 'r':
+                    return check(source, start, end, 2, "ue", TRUE);
+                }
+            }
+            break;
+        case 'v':
+            return check(source, start, end, 1, "ar", VAR);
+        case 'w':
+            return check(source, start, end, 1, "hile", WHILE);
+        }
+
+        return IDENTIFIER;
+    }
+
+    /**
+     * @param type TokenType
+     * @return The spelling of a keyword, or null for any other TokenType
+     */
+    static String lexeme(TokenType type) {
+        return lexemes[type.ordinal()];
+    }
+
+    /**
+     * Compares the remaining chars of the identifier against a keyword
+     *
+     * @param offset How many chars the trie already matched
+     * @param rest   The remaining chars of the keyword
+     * @param type   The keyword's TokenType
+     */
+    private static TokenType check(CharSequence source, int start, int end, int offset, String rest, TokenType type) {
+        if (end - start != offset + rest.length()) {
+            return IDENTIFIER;
+        }
+
+        for (int i = 0; i < rest.length(); i++) {
+            if (source.charAt(start + offset + i) != rest.charAt(i)) {
+                return IDENTIFIER;
+            }
+        }
+
+        return type;
+    }
+}
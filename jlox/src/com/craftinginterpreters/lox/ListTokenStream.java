@@ -0,0 +1,32 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * TokenStream over an already scanned token list
+ */
+class ListTokenStream implements TokenStream {
+    private final List<Token> tokens;
+    private int current = 0;
+
+    ListTokenStream(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public Token peek() {
+        return tokens.get(current);
+    }
+
+    @Override
+    public void advance() {
+        if (peek().type != TokenType.EOF) {
+            current++;
+        }
+    }
+
+    @Override
+    public Token previous() {
+        return tokens.get(current - 1);
+    }
+}
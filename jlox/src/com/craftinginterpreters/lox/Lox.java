@@ -3,44 +3,191 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Lox {
-    static boolean hadError = false;
+    /**
+     * How expressions get executed
+     */
+    enum Engine {
+        // Tree-walking Interpreter
+        TREE,
+        // Compile to bytecode and run it on the VM
+        VM,
+        // Walk the array based FlatAst
+        FLAT,
+        // Self-specializing Node tree
+        NODES
+    }
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        List<String> scripts = new ArrayList<>();
+        Engine engine = Engine.TREE;
+        ParseCache cache = null;
+        boolean stats = false;
+        boolean tableScanner = false;
+        boolean prattParser = false;
+        String statsFile = null;
+        boolean batch = false;
+        boolean server = false;
+        int port = Server.DEFAULT_PORT;
+        int jobs = Runtime.getRuntime().availableProcessors();
+
+        for (String arg : args) {
+            if (arg.equals("--engine=tree")) {
+                engine = Engine.TREE;
+            } else if (arg.equals("--engine=vm")) {
+                engine = Engine.VM;
+            } else if (arg.equals("--engine=flat")) {
+                engine = Engine.FLAT;
+            } else if (arg.equals("--engine=nodes")) {
+                engine = Engine.NODES;
+            } else if (arg.equals("--scanner=table")) {
+                tableScanner = true;
+            } else if (arg.equals("--scanner=switch")) {
+                tableScanner = false;
+            } else if (arg.equals("--parser=pratt")) {
+                prattParser = true;
+            } else if (arg.equals("--parser=descent")) {
+                prattParser = false;
+            } else if (arg.equals("--cache")) {
+                cache = new ParseCache(ParseCache.defaultDirectory(), ParseCache.DEFAULT_MAX_BYTES);
+            } else if (arg.startsWith("--cache=")) {
+                cache = new ParseCache(Paths.get(arg.substring("--cache=".length())), ParseCache.DEFAULT_MAX_BYTES);
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.startsWith("--stats=")) {
+                stats = true;
+                statsFile = arg.substring("--stats=".length());
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--server")) {
+                server = true;
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--jobs=")) {
+                jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+            } else if (arg.startsWith("--")) {
+                usage();
+                return;
+            } else {
+                scripts.add(arg);
+            }
+        }
+
+        NodeCache nodes = engine == Engine.NODES ? new NodeCache(NodeCache.DEFAULT_MAX_PROGRAMS) : null;
+        LoxContext.Options options = new LoxContext.Options(engine, cache, nodes, stats, tableScanner, prattParser,
+                Parser.DEFAULT_MAX_ERRORS);
+
+        if (batch || server) {
+            // Every script runs in a context of its own; their metrics are added up here
+            Metrics totals = stats ? new Metrics() : null;
+
+            if (totals != null) {
+                totals.register();
+            }
+
+            if (server) {
+                new Server(port, jobs, options, totals).serve();
+                writeStats(totals, statsFile);
+                return;
+            }
+
+            int status = new Batch(jobs, options, totals).run(scripts);
+            writeStats(totals, statsFile);
+            System.exit(status);
+        } else if (scripts.size() > 1) {
+            usage();
         } else {
-            runPrompt();
+            LoxContext context = new LoxContext(options);
+
+            if (context.metrics != null) {
+                context.metrics.register();
+            }
+
+            if (scripts.size() == 1) {
+                runFile(scripts.get(0), context, statsFile);
+            } else {
+                runPrompt(context, statsFile);
+            }
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--engine=tree|vm|flat|nodes] [--scanner=switch|table] [--parser=descent|pratt]"
+                + " [--cache[=<dir>]] [--stats[=<file>]] [script]");
+        System.out.println("       jlox --batch [--jobs=<n>] [options] <dir|script|list>...");
+        System.out.println("       jlox --server [--port=<n>] [--jobs=<n>] [options]");
+    }
+
     /**
      * Run on a file
-     * @param path Path to the source file
+     * @param path      Path to the source file
+     * @param context   Session to run in
+     * @param statsFile Where to write the metrics, or null for stderr
      * @throws IOException
      */
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    private static void runFile(String path, LoxContext context, String statsFile) throws IOException {
+        runScript(Paths.get(path), context);
+        writeStats(context.metrics, statsFile);
 
         // Indicate an error in the exit code
-        if (hadError) {
-            System.exit(65);
+        int status = context.exitCode();
+
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Read and run a script
+     * @param path    Path to the source file
+     * @param context Session to run in
+     * @throws IOException
+     */
+    static void runScript(Path path, LoxContext context) throws IOException {
+        context.begin(Metrics.Phase.READ);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Map the file instead of copying it onto the heap; the scanner reads the bytes directly
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            context.end();
+
+            run(bytes, context);
+        }
+    }
+
+    /**
+     * Run a script that has been read already
+     * @param source  The UTF-8 source bytes
+     * @param context Session to run in
+     */
+    static void run(ByteBuffer source, LoxContext context) {
+        if (context.options.nodes() != null) {
+            runNodes(source, context);
+        } else if (context.options.cache() == null) {
+            run(new ByteSource(source), context);
+        } else {
+            runCached(source, context);
         }
     }
 
     /**
      * Run in CLI mode
+     * @param context   Session to run in
+     * @param statsFile Where to write the metrics, or null for stderr
      * @throws IOException
      */
-    private static void runPrompt() throws IOException {
+    private static void runPrompt(LoxContext context, String statsFile) throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
 
@@ -50,58 +197,282 @@ public class Lox {
             if (line == null) {
                 break;
             }
-            run(line);
-            hadError = false;
+            if (context.options.nodes() != null) {
+                // Through the node cache, so a line entered again reuses its trees
+                run(StandardCharsets.UTF_8.encode(line), context);
+            } else {
+                run(line, context);
+            }
+            context.hadError = false;
+        }
+
+        writeStats(context.metrics, statsFile);
+    }
+
+    /**
+     * Run Interpreter, going through the parse cache
+     * @param source  The source bytes
+     * @param context Session to run in
+     */
+    private static void runCached(ByteBuffer source, LoxContext context) {
+        if (context.metrics != null) {
+            context.metrics.run(source.remaining());
+        }
+
+        // Hashing counts as reading
+        context.begin(Metrics.Phase.READ);
+        String key = ParseCache.key(source);
+        context.end();
+
+        List<Expression> statements = parseCached(source, key, context);
+
+        // Stop if there was a syntax error
+        if (context.hadError) {
+            return;
+        }
+
+        execute(statements, context);
+    }
+
+    /**
+     * Run on nodes, reusing the trees of an earlier run of the same source if
+     * there are any
+     * @param source  The source bytes
+     * @param context Session to run in
+     */
+    private static void runNodes(ByteBuffer source, LoxContext context) {
+        NodeCache nodes = context.options.nodes();
+
+        if (context.metrics != null) {
+            context.metrics.run(source.remaining());
+        }
+
+        // Hashing and taking the trees count as reading
+        context.begin(Metrics.Phase.READ);
+        String key = ParseCache.key(source);
+        NodeInterpreter.Program program = nodes.take(key);
+        context.end();
+
+        if (program == null) {
+            List<Expression> statements = context.options.cache() == null ? parse(new ByteSource(source), context)
+                    : parseCached(source, key, context);
+
+            // Stop if there was a syntax error
+            if (context.hadError) {
+                return;
+            }
+
+            List<Expression> optimized = optimize(statements, context);
+            context.begin(Metrics.Phase.EVALUATE);
+            program = context.nodeInterpreter().build(optimized);
+        } else {
+            context.begin(Metrics.Phase.EVALUATE);
+        }
+
+        context.nodeInterpreter().interpret(program);
+        context.end();
+        nodes.give(key, program);
+    }
+
+    /**
+     * Load the trees from the parse cache, or parse and store them
+     * @param source  The source bytes
+     * @param key     Its cache key
+     * @param context Session to parse in
+     * @return The statements without syntax errors
+     */
+    private static List<Expression> parseCached(ByteBuffer source, String key, LoxContext context) {
+        ParseCache cache = context.options.cache();
+
+        // Loading counts as reading
+        context.begin(Metrics.Phase.READ);
+        List<Expression> statements = cache.load(key);
+        context.end();
+
+        if (statements == null) {
+            statements = parse(new ByteSource(source), context);
+
+            if (!context.hadError) {
+                cache.store(key, statements);
+            }
         }
+
+        return statements;
     }
 
     /**
      * Run Interpreter
-     * @param source The source text
+     * @param source  The source text
+     * @param context Session to run in
      */
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    private static void run(CharSequence source, LoxContext context) {
+        if (context.metrics != null) {
+            context.metrics.run(source.length());
+        }
+
+        if (context.options.engine() == Engine.FLAT) {
+            // Parse straight into the flat form, no Expression objects at all
+            Parser parser = parser(source, context);
+            context.begin(Metrics.Phase.PARSE);
+            FlatAst ast = parser.parseFlat();
+            context.end();
+
+            if (context.metrics != null) {
+                context.metrics.countNodes(ast);
+            }
+
+            if (!context.hadError) {
+                context.begin(Metrics.Phase.EVALUATE);
+                context.flatInterpreter().interpret(ast);
+                context.end();
+            }
+
+            return;
+        }
+
+        List<Expression> statements = parse(source, context);
 
-        // For now, just print the tokens
-        for (Token token : tokens) {
-            System.out.println(token);
+        // Stop if there was a syntax error
+        if (context.hadError) {
+            return;
         }
+
+        execute(statements, context);
     }
 
     /**
-     * Reports a generic error
-     *
-     * @param line    Line number
-     * @param message Error message
+     * Scan and parse
+     * @param source  The source text
+     * @param context Session to parse in
+     * @return The statements without syntax errors
      */
-    static void error(int line, String message) {
-        reportError(line, "", message);
+    private static List<Expression> parse(CharSequence source, LoxContext context) {
+        Parser parser = parser(source, context);
+        context.begin(Metrics.Phase.PARSE);
+        List<Expression> statements = parser.parse();
+        context.end();
+
+        if (context.metrics != null) {
+            context.metrics.countNodes(statements);
+        }
+
+        return statements;
     }
 
     /**
-     * Reports an error regarding a token
-     *
-     * @param token   The erroring token
-     * @param message Error message
+     * @param source  The source text
+     * @param context Session to parse in
+     * @return Parser over the tokens of the source
      */
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            reportError(token.line, " at end", message);
-        } else {
-            reportError(token.line, " at '" + token.lexeme + "'", message);
+    private static Parser parser(CharSequence source, LoxContext context) {
+        if (context.metrics != null) {
+            // Scan up front, so scanning and parsing are timed separately
+            context.begin(Metrics.Phase.SCAN);
+            TokenBuffer tokens = scanPacked(source, context);
+            context.end();
+            context.metrics.countTokens(tokens);
+
+            return parser(tokens.stream(), context);
+        }
+
+        if (ParallelScanner.worthwhile(source) || context.options.tableScanner()) {
+            return parser(scanPacked(source, context).stream(), context);
+        }
+
+        // Tokens are pulled from the scanner as the parser needs them
+        return parser(new ScanningTokenStream(new Scanner(source, context)), context);
+    }
+
+    /**
+     * @param tokens  The tokens to parse
+     * @param context Session to parse in
+     * @return The parser the options ask for
+     */
+    private static Parser parser(TokenStream tokens, LoxContext context) {
+        return context.options.prattParser() ? new PrattParser(tokens, context) : new Parser(tokens, context);
+    }
+
+    /**
+     * Scan the whole source up front
+     * @param source  The source text
+     * @param context Session to scan in
+     * @return The tokens
+     */
+    private static TokenBuffer scanPacked(CharSequence source, LoxContext context) {
+        if (ParallelScanner.worthwhile(source)) {
+            // Big sources are scanned in parallel
+            return new ParallelScanner(source, context).scanPacked();
+        }
+
+        if (context.options.tableScanner()) {
+            return new TableScanner(source, context).scanPacked();
+        }
+
+        return new Scanner(source, context).scanPacked();
+    }
+
+    /**
+     * Optimize and evaluate
+     * @param statements The parsed program
+     * @param context    Session to run in
+     */
+    private static void execute(List<Expression> statements, LoxContext context) {
+        List<Expression> optimized = optimize(statements, context);
+
+        context.begin(Metrics.Phase.EVALUATE);
+
+        switch (context.options.engine()) {
+        case VM:
+            context.vm().interpret(optimized);
+            break;
+        case FLAT:
+            // Trees from the cache come as Expression
+            context.flatInterpreter().interpret(FlatAst.of(optimized));
+            break;
+        case NODES:
+            // Runs once; runNodes() keeps the trees for the next run
+            context.nodeInterpreter().interpret(context.nodeInterpreter().build(optimized));
+            break;
+        default:
+            context.interpreter().interpret(optimized);
         }
+
+        context.end();
     }
 
     /**
-     * Prints an error to the console
-     *
-     * @param line    Line number
-     * @param where   Position in line
-     * @param message Error message
+     * @param statements The parsed program
+     * @param context    Session to run in
+     * @return The statements, optimized
      */
-    private static void reportError(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    private static List<Expression> optimize(List<Expression> statements, LoxContext context) {
+        context.begin(Metrics.Phase.OPTIMIZE);
+        Optimizer optimizer = context.optimizer();
+        List<Expression> optimized = new ArrayList<>(statements.size());
+
+        for (Expression statement : statements) {
+            optimized.add(optimizer.optimize(statement));
+        }
+
+        context.end();
+
+        return optimized;
+    }
+
+    /**
+     * Print the metrics as JSON, to stderr or the stats file
+     * @param metrics   The metrics, or null if there are none
+     * @param statsFile Where to write them, or null for stderr
+     */
+    private static void writeStats(Metrics metrics, String statsFile) throws IOException {
+        if (metrics == null) {
+            return;
+        }
+
+        if (statsFile == null) {
+            System.err.println(metrics.getJson());
+        } else {
+            Files.writeString(Paths.get(statsFile), metrics.getJson() + System.lineSeparator());
+        }
     }
 }
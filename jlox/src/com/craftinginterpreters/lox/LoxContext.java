@@ -0,0 +1,257 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One session of the interpreter: its options, where its results and errors
+ * go, whether it failed, and the engines, which keep scratch state between
+ * calls. Every stage gets the context passed in and nothing in it is shared,
+ * so independent sessions can scan, parse and run on different threads at the
+ * same time. A context itself is used by one thread at a time
+ */
+class LoxContext {
+    /**
+     * Settings that stay the same for the whole session
+     *
+     * @param engine       How expressions get executed
+     * @param cache        Parse cache to go through, or null
+     * @param nodes        Node trees of earlier runs, with the nodes engine
+     * @param stats        Whether to collect Metrics
+     * @param tableScanner Whether to scan with the TableScanner
+     * @param prattParser  Whether to parse with the PrattParser
+     * @param maxErrors    How many syntax errors the parser reports before giving up
+     */
+    record Options(Lox.Engine engine, ParseCache cache, NodeCache nodes, boolean stats, boolean tableScanner,
+            boolean prattParser, int maxErrors) {
+        static final Options DEFAULT = new Options(Lox.Engine.TREE, null, null, false, false, false,
+                Parser.DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * Receives the error messages of a session, one line each
+     */
+    interface Diagnostics {
+        void report(String message);
+    }
+
+    final Options options;
+    // Where results go
+    final PrintStream out;
+    private final Diagnostics diagnostics;
+    // Only set with stats
+    final Metrics metrics;
+
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    // Messages of a fork(), waiting for join()
+    private List<String> pending = null;
+    private int errors = 0;
+    private int runtimeErrors = 0;
+
+    // Created on first use
+    private Interpreter interpreter = null;
+    private VM vm = null;
+    private FlatInterpreter flatInterpreter = null;
+    private NodeInterpreter nodeInterpreter = null;
+    private Optimizer optimizer = null;
+
+    /**
+     * Session on the console with the default options
+     */
+    LoxContext() {
+        this(Options.DEFAULT);
+    }
+
+    /**
+     * Session on the console
+     */
+    LoxContext(Options options) {
+        this(System.out, System.err::println, options);
+    }
+
+    /**
+     * @param out         Where results go
+     * @param diagnostics Where errors go
+     * @param options     Settings for the session
+     */
+    LoxContext(PrintStream out, Diagnostics diagnostics, Options options) {
+        this.out = out;
+        this.diagnostics = diagnostics;
+        this.options = options;
+        this.metrics = options.stats() ? new Metrics() : null;
+    }
+
+    /**
+     * A context for a piece of this session's work that runs on its own, e.g. one
+     * chunk of a parallel scan. It has the same options, but keeps its errors
+     * until they're passed on with join(), so they can be reported in order
+     *
+     * @return The new context
+     */
+    LoxContext fork() {
+        List<String> messages = new ArrayList<>();
+        LoxContext fork = new LoxContext(out, messages::add,
+                new Options(options.engine(), options.cache(), options.nodes(), false, options.tableScanner(),
+                options.prattParser(), options.maxErrors()));
+        fork.pending = messages;
+
+        return fork;
+    }
+
+    /**
+     * Report the errors of a fork() as if they happened here
+     *
+     * @param fork A context made by fork(), that is done
+     */
+    void join(LoxContext fork) {
+        for (String message : fork.pending) {
+            diagnostics.report(message);
+        }
+
+        fork.pending.clear();
+        hadError |= fork.hadError;
+        hadRuntimeError |= fork.hadRuntimeError;
+
+        if (metrics != null) {
+            for (int i = 0; i < fork.errors; i++) {
+                metrics.error();
+            }
+            for (int i = 0; i < fork.runtimeErrors; i++) {
+                metrics.runtimeError();
+            }
+        }
+
+        errors += fork.errors;
+        runtimeErrors += fork.runtimeErrors;
+        fork.errors = 0;
+        fork.runtimeErrors = 0;
+    }
+
+    /**
+     * @return Exit code for the session: 65 after a syntax error, 70 after a
+     *         runtime error, 0 otherwise
+     */
+    int exitCode() {
+        if (hadError) {
+            return 65;
+        }
+        if (hadRuntimeError) {
+            return 70;
+        }
+
+        return 0;
+    }
+
+    Interpreter interpreter() {
+        if (interpreter == null) {
+            interpreter = new Interpreter(this);
+        }
+
+        return interpreter;
+    }
+
+    VM vm() {
+        if (vm == null) {
+            vm = new VM(this);
+        }
+
+        return vm;
+    }
+
+    FlatInterpreter flatInterpreter() {
+        if (flatInterpreter == null) {
+            flatInterpreter = new FlatInterpreter(this);
+        }
+
+        return flatInterpreter;
+    }
+
+    NodeInterpreter nodeInterpreter() {
+        if (nodeInterpreter == null) {
+            nodeInterpreter = new NodeInterpreter(this);
+        }
+
+        return nodeInterpreter;
+    }
+
+    Optimizer optimizer() {
+        if (optimizer == null) {
+            optimizer = new Optimizer(this);
+        }
+
+        return optimizer;
+    }
+
+    // Phase timing, for stats
+
+    void begin(Metrics.Phase phase) {
+        if (metrics != null) {
+            metrics.begin(phase);
+        }
+    }
+
+    void end() {
+        if (metrics != null) {
+            metrics.end();
+        }
+    }
+
+    /**
+     * Reports a generic error
+     *
+     * @param line    Line number
+     * @param message Error message
+     */
+    void error(int line, String message) {
+        reportError(line, "", message);
+    }
+
+    /**
+     * Reports an error regarding a token
+     *
+     * @param token   The erroring token
+     * @param message Error message
+     */
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            reportError(token.line(), " at end", message);
+        } else {
+            reportError(token.line(), " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    /**
+     * Reports an error that happened while evaluating
+     *
+     * @param error The error
+     */
+    void runtimeError(RuntimeError error) {
+        diagnostics.report(error.getMessage() + "\n[line " + error.token.line() + "]");
+        hadRuntimeError = true;
+        runtimeErrors++;
+
+        if (metrics != null) {
+            metrics.runtimeError();
+        }
+    }
+
+    /**
+     * Sends an error to the diagnostics
+     *
+     * @param line    Line number
+     * @param where   Position in line
+     * @param message Error message
+     */
+    private void reportError(int line, String where, String message) {
+        diagnostics.report("[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+        errors++;
+
+        if (metrics != null) {
+            metrics.error();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+
+/**
+ * Lox string value, kept as a rope. A string literal is a slice of the source it
+ * was scanned from and a concatenation is a node that points at its two
+ * operands, so neither copies any characters. They are put together the first
+ * time somebody needs them, for printing, comparing or hashing, in one pass
+ * over the rope that is remembered afterwards. Building a string with n
+ * concatenations therefore costs O(n) time and memory instead of O(n^2)
+ */
+final class LoxString {
+    static final LoxString EMPTY = new LoxString("");
+
+    // Slice: the characters are source[start, end)
+    private final CharSequence source;
+    private final int start;
+    private final int end;
+
+    // Concatenation: the characters of left followed by those of right
+    private final LoxString left;
+    private final LoxString right;
+
+    // At least as many as there are characters; slices of a ByteSource count bytes
+    private final int bound;
+
+    // The characters, once they've been put together. Two threads that race
+    // to do that compute the same String, so it doesn't need to be volatile
+    private String text;
+
+    private LoxString(String text) {
+        this(null, 0, 0, null, null, text.length());
+        this.text = text;
+    }
+
+    private LoxString(CharSequence source, int start, int end, LoxString left, LoxString right, int bound) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.left = left;
+        this.right = right;
+        this.bound = bound;
+    }
+
+    static LoxString of(String text) {
+        return text.isEmpty() ? EMPTY : new LoxString(text);
+    }
+
+    /**
+     * A piece of source text. Only a String or ByteSource is sure not to change
+     * under the slice; the characters of anything else are copied right away
+     *
+     * @param source The source text
+     * @param start  Start offset (inclusive)
+     * @param end    End offset (exclusive)
+     */
+    static LoxString slice(CharSequence source, int start, int end) {
+        if (start == end) {
+            return EMPTY;
+        }
+
+        if (source instanceof String || source instanceof ByteSource) {
+            return new LoxString(source, start, end, null, null, end - start);
+        }
+
+        return of(source.subSequence(start, end).toString());
+    }
+
+    /**
+     * @param other The string to append
+     * @return A string with the characters of this one followed by other's
+     */
+    LoxString concat(LoxString other) {
+        if (other.bound == 0) {
+            return this;
+        }
+
+        if (bound == 0) {
+            return other;
+        }
+
+        // Long enough to be bigger than any array anyway
+        int sum = (int) Math.min((long) bound + other.bound, Integer.MAX_VALUE);
+
+        return new LoxString(null, 0, 0, this, other, sum);
+    }
+
+    @Override
+    public String toString() {
+        String result = text;
+
+        if (result == null) {
+            result = left == null ? source.subSequence(start, end).toString() : flatten();
+            text = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Puts the characters of a concatenation together. The rope may be as deep
+     * as it is long, so it's walked with an explicit stack, left to right
+     */
+    private String flatten() {
+        StringBuilder builder = new StringBuilder(bound);
+        ArrayDeque<LoxString> pending = new ArrayDeque<>();
+        pending.push(this);
+
+        while (!pending.isEmpty()) {
+            LoxString next = pending.pop();
+
+            if (next.text != null || next.left == null) {
+                builder.append(next.toString());
+            } else {
+                pending.push(next.right);
+                pending.push(next.left);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other == this || other instanceof LoxString string && toString().equals(string.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
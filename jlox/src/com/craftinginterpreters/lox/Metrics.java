@@ -0,0 +1,313 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and phase timers for the scan / parse / run pipeline. Lox only
+ * creates an instance when asked to (--stats); otherwise the hooks are a null
+ * check per phase, and nothing at all per token or node. The counters are
+ * filled in per phase, from the finished token buffer or tree, rather than
+ * inside the scanner and parser loops.
+ *
+ * Allocation is what the running thread allocated during a phase, as far as the
+ * JVM can tell; work done on other threads, like parallel scanning, isn't
+ * included.
+ *
+ * One instance is filled in by one thread at a time. Batches give every run
+ * its own and add them up with add(). JMX reads and resets them from threads
+ * of its own while a run is going on, so every method holds the lock; it is
+ * only ever taken once per phase, or per run.
+ */
+class Metrics implements MetricsMXBean {
+    enum Phase {
+        READ, SCAN, PARSE, OPTIMIZE, EVALUATE
+    }
+
+    private static final String OBJECT_NAME = "com.craftinginterpreters.lox:type=Metrics";
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final Phase[] PHASES = Phase.values();
+    // Same order as the FlatAst node kinds
+    private static final String[] NODE_KINDS = { "Binary", "Grouping", "Literal", "Literal", "Unary" };
+
+    private final long[] phaseNanos = new long[PHASES.length];
+    private final long[] phaseAllocated = new long[PHASES.length];
+    private final long[] tokens = new long[TYPES.length];
+    private final Map<String, Long> nodes = new LinkedHashMap<>();
+    private long runs = 0;
+    private long bytes = 0;
+    private long errors = 0;
+    private long runtimeErrors = 0;
+
+    // The phase that is running
+    private Phase phase = null;
+    private long phaseStart;
+    private long phaseAllocatedStart;
+
+    /**
+     * Make the metrics visible over JMX. Best effort: if it fails they are still
+     * collected
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException error) {
+            // Already registered, or no permission
+        }
+    }
+
+    /**
+     * Start timing a phase
+     */
+    synchronized void begin(Phase phase) {
+        this.phase = phase;
+        phaseAllocatedStart = allocatedBytes();
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Stop timing the phase begin() started
+     */
+    synchronized void end() {
+        long now = System.nanoTime();
+
+        phaseNanos[phase.ordinal()] += now - phaseStart;
+        phaseAllocated[phase.ordinal()] += allocatedBytes() - phaseAllocatedStart;
+        phase = null;
+    }
+
+    /**
+     * A source is about to be run
+     *
+     * @param size Its size in chars
+     */
+    synchronized void run(long size) {
+        runs++;
+        bytes += size;
+    }
+
+    void countTokens(TokenBuffer buffer) {
+        // Counted without the lock, which is only taken to add the counts up
+        long[] counts = new long[TYPES.length];
+
+        for (int i = 0; i < buffer.size(); i++) {
+            counts[buffer.type(i).ordinal()]++;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < counts.length; i++) {
+                tokens[i] += counts[i];
+            }
+        }
+    }
+
+    void countNodes(List<Expression> statements) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        ArrayDeque<Expression> work = new ArrayDeque<>(statements);
+
+        while (!work.isEmpty()) {
+            Expression expression = work.pop();
+            counts.merge(expression.getClass().getSimpleName(), 1L, Long::sum);
+
+            for (int i = 0; i < expression.childCount(); i++) {
+                work.push(expression.child(i));
+            }
+        }
+
+        addNodes(counts);
+    }
+
+    void countNodes(FlatAst ast) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+
+        for (int node = 0; node < ast.size(); node++) {
+            counts.merge(NODE_KINDS[ast.kind(node)], 1L, Long::sum);
+        }
+
+        addNodes(counts);
+    }
+
+    private synchronized void addNodes(Map<String, Long> counts) {
+        counts.forEach((kind, count) -> nodes.merge(kind, count, Long::sum));
+    }
+
+    /**
+     * Add the numbers of another run, e.g. one of a batch
+     */
+    synchronized void add(Metrics other) {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] += other.phaseNanos[i];
+            phaseAllocated[i] += other.phaseAllocated[i];
+        }
+
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] += other.tokens[i];
+        }
+
+        other.nodes.forEach((kind, count) -> nodes.merge(kind, count, Long::sum));
+        runs += other.runs;
+        bytes += other.bytes;
+        errors += other.errors;
+        runtimeErrors += other.runtimeErrors;
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized void runtimeError() {
+        runtimeErrors++;
+    }
+
+    @Override
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized long getTokens() {
+        long total = 0;
+
+        for (long count : tokens) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    @Override
+    public synchronized long getNodes() {
+        long total = 0;
+
+        for (long count : nodes.values()) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    @Override
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    @Override
+    public synchronized long getRuntimeErrors() {
+        return runtimeErrors;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseNanos() {
+        return byPhase(phaseNanos);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseAllocatedBytes() {
+        return byPhase(phaseAllocated);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getTokensByType() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+
+        for (TokenType type : TYPES) {
+            if (tokens[type.ordinal()] > 0) {
+                counts.put(type.name(), tokens[type.ordinal()]);
+            }
+        }
+
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getNodesByKind() {
+        return new LinkedHashMap<>(nodes);
+    }
+
+    @Override
+    public synchronized String getJson() {
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\n");
+        json.append("  \"runs\": ").append(runs).append(",\n");
+        json.append("  \"bytes\": ").append(bytes).append(",\n");
+        json.append("  \"errors\": ").append(errors).append(",\n");
+        json.append("  \"runtimeErrors\": ").append(runtimeErrors).append(",\n");
+        json.append("  \"phaseNanos\": ");
+        appendObject(json, getPhaseNanos());
+        json.append(",\n  \"phaseAllocatedBytes\": ");
+        appendObject(json, getPhaseAllocatedBytes());
+        json.append(",\n  \"tokens\": ").append(getTokens()).append(",\n");
+        json.append("  \"tokensByType\": ");
+        appendObject(json, getTokensByType());
+        json.append(",\n  \"nodes\": ").append(getNodes()).append(",\n");
+        json.append("  \"nodesByKind\": ");
+        appendObject(json, getNodesByKind());
+        json.append("\n}");
+
+        return json.toString();
+    }
+
+    @Override
+    public synchronized void reset() {
+        Arrays.fill(phaseNanos, 0);
+        Arrays.fill(phaseAllocated, 0);
+        Arrays.fill(tokens, 0);
+        nodes.clear();
+        runs = 0;
+        bytes = 0;
+        errors = 0;
+        runtimeErrors = 0;
+    }
+
+    private static Map<String, Long> byPhase(long[] values) {
+        Map<String, Long> result = new LinkedHashMap<>();
+
+        for (Phase phase : PHASES) {
+            result.put(phase.name().toLowerCase(), values[phase.ordinal()]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Keys are names or enum constants, so they need no escaping
+     */
+    private static void appendObject(StringBuilder json, Map<String, Long> values) {
+        json.append("{");
+
+        String separator = "";
+
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            json.append(separator).append("\"").append(entry.getKey()).append("\": ").append(entry.getValue());
+            separator = ", ";
+        }
+
+        json.append("}");
+    }
+
+    /**
+     * @return Bytes allocated by this thread so far, or 0 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,36 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+
+/**
+ * Management interface of Metrics, registered as
+ * com.craftinginterpreters.lox:type=Metrics. Times are in nanoseconds
+ */
+public interface MetricsMXBean {
+    long getRuns();
+
+    long getBytes();
+
+    long getTokens();
+
+    long getNodes();
+
+    long getErrors();
+
+    long getRuntimeErrors();
+
+    Map<String, Long> getPhaseNanos();
+
+    Map<String, Long> getPhaseAllocatedBytes();
+
+    Map<String, Long> getTokensByType();
+
+    Map<String, Long> getNodesByKind();
+
+    /**
+     * @return Everything as a JSON object
+     */
+    String getJson();
+
+    void reset();
+}
@@ -0,0 +1,524 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Executable tree for NodeInterpreter. Unlike an Expression, a node executes
+ * itself, and a binary node that has seen its operands replaces itself in its
+ * parent with a variant specialized to their types: number arithmetic, number
+ * comparison or string concatenation. A specialized node only does the work
+ * its types need, and numbers flow between number nodes unboxed, through
+ * executeNumber(). If a specialized node ever sees other types it replaces
+ * itself again, with the generic variant that handles everything, for good
+ */
+abstract class Node {
+    // Whose child this is; every node but a Root has a parent
+    Node parent = null;
+
+    /**
+     * @return The value
+     */
+    abstract Object execute();
+
+    /**
+     * Execute a node that is expected to produce a number
+     *
+     * @return The value, unboxed
+     * @throws UnexpectedResult If the value isn't a number, with the value
+     */
+    double executeNumber() throws UnexpectedResult {
+        Object value = execute();
+
+        if (value instanceof Double) {
+            return (double) value;
+        }
+
+        throw new UnexpectedResult(value);
+    }
+
+    /**
+     * Put another node in this one's place
+     *
+     * @param replacement The node to take over; gets this node's parent
+     * @return replacement
+     */
+    final <T extends Node> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+
+        return replacement;
+    }
+
+    /**
+     * Swap a child for another node
+     */
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no children");
+    }
+
+    /**
+     * @return child, which now belongs to this node
+     */
+    final Node adopt(Node child) {
+        child.parent = this;
+
+        return child;
+    }
+
+    /**
+     * Thrown by executeNumber() when the value is not a number. Expected while a
+     * specialized node is being given up on, so it doesn't record a stack trace
+     */
+    static class UnexpectedResult extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final Object value;
+
+        UnexpectedResult(Object value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Holds a tree, so that its top node has a parent to be replaced in
+     */
+    static class Root extends Node {
+        // Levels of nodes below the root; executing recurses this deep
+        final int height;
+        private Node body;
+
+        Root(Node body, int height) {
+            this.height = height;
+            this.body = adopt(body);
+        }
+
+        @Override
+        Object execute() {
+            return body.execute();
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            body = replacement;
+        }
+    }
+
+    static final class NumberLiteral extends Node {
+        private final double value;
+        // Boxed once, for execute()
+        private final Object boxed;
+
+        NumberLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute() {
+            return boxed;
+        }
+
+        @Override
+        double executeNumber() {
+            return value;
+        }
+    }
+
+    /**
+     * Any other literal: nil, boolean or string
+     */
+    static class Constant extends Node {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute() {
+            return value;
+        }
+    }
+
+    static class Negate extends Node {
+        private final Token operator;
+        private Node operand;
+
+        Negate(Token operator, Node operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute() {
+            return negate();
+        }
+
+        @Override
+        double executeNumber() {
+            return negate();
+        }
+
+        private double negate() {
+            try {
+                return -operand.executeNumber();
+            } catch (UnexpectedResult result) {
+                // Throws the type error
+                return (double) Interpreter.unary(operator, result.value);
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = replacement;
+        }
+    }
+
+    static class Not extends Node {
+        private Node operand;
+
+        Not(Node operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute() {
+            return !Interpreter.isTruthy(operand.execute());
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = replacement;
+        }
+    }
+
+    /**
+     * Binary operator in any of its states. The operands are always executed
+     * left to right, and any of them failing fails the node before its own type
+     * checks, as in Interpreter
+     */
+    abstract static class Binary extends Node {
+        final Token operator;
+        Node left;
+        Node right;
+
+        Binary(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        /**
+         * Apply the operator to operands that have already been executed
+         */
+        abstract Object executeWith(Object left, Object right);
+
+        /**
+         * Give up on the specialization: the operands turned out to be of other
+         * types. The generic node takes over, starting with these operands
+         */
+        final Object deoptimize(Object left, Object right) {
+            return replace(new Generic(operator, this.left, this.right)).executeWith(left, right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = replacement;
+            } else {
+                right = replacement;
+            }
+        }
+    }
+
+    /**
+     * A binary operator that hasn't been executed yet. The first execution picks
+     * its specialization
+     */
+    static class Uninitialized extends Binary {
+        Uninitialized(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+
+            return executeWith(leftValue, rightValue);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            return replace(specialize(leftValue, rightValue)).executeWith(leftValue, rightValue);
+        }
+
+        private Binary specialize(Object leftValue, Object rightValue) {
+            boolean numbers = leftValue instanceof Double && rightValue instanceof Double;
+
+            switch (operator.type) {
+            case PLUS:
+                if (leftValue instanceof LoxString && rightValue instanceof LoxString) {
+                    return new StringConcat(operator, left, right);
+                }
+                if (numbers) {
+                    return NumberArithmetic.of(operator, left, right);
+                }
+                break;
+            case MINUS:
+            case SLASH:
+            case STAR:
+                if (numbers) {
+                    return NumberArithmetic.of(operator, left, right);
+                }
+                break;
+            default:
+                if (numbers) {
+                    return new NumberComparison(operator, left, right);
+                }
+                break;
+            }
+
+            return new Generic(operator, left, right);
+        }
+    }
+
+    /**
+     * +, -, * or / on two numbers. One subclass per operator, so the operation
+     * itself is straight-line code
+     */
+    abstract static class NumberArithmetic extends Binary {
+        NumberArithmetic(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        static NumberArithmetic of(Token operator, Node left, Node right) {
+            switch (operator.type) {
+            case MINUS:
+                return new Subtract(operator, left, right);
+            case PLUS:
+                return new Add(operator, left, right);
+            case SLASH:
+                return new Divide(operator, left, right);
+            default:
+                return new Multiply(operator, left, right);
+            }
+        }
+
+        abstract double apply(double leftValue, double rightValue);
+
+        @Override
+        final Object execute() {
+            try {
+                return executeNumber();
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
+        @Override
+        final Object executeWith(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return apply((double) leftValue, (double) rightValue);
+            }
+
+            return deoptimize(leftValue, rightValue);
+        }
+
+        /**
+         * @return The left operand, if it's a number
+         * @throws UnexpectedResult If it isn't, with the result of the generic node
+         */
+        final double leftNumber() throws UnexpectedResult {
+            // Half the operands are literals, which don't need a virtual call
+            if (left instanceof NumberLiteral literal) {
+                return literal.value;
+            }
+
+            try {
+                return left.executeNumber();
+            } catch (UnexpectedResult result) {
+                throw new UnexpectedResult(deoptimize(result.value, right.execute()));
+            }
+        }
+
+        /**
+         * @param leftValue The left operand, already executed
+         * @return The right operand, if it's a number
+         * @throws UnexpectedResult If it isn't, with the result of the generic node
+         */
+        final double rightNumber(double leftValue) throws UnexpectedResult {
+            if (right instanceof NumberLiteral literal) {
+                return literal.value;
+            }
+
+            try {
+                return right.executeNumber();
+            } catch (UnexpectedResult result) {
+                throw new UnexpectedResult(deoptimize(leftValue, result.value));
+            }
+        }
+    }
+
+    static final class Add extends NumberArithmetic {
+        Add(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double executeNumber() throws UnexpectedResult {
+            double leftValue = leftNumber();
+
+            return leftValue + rightNumber(leftValue);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue + rightValue;
+        }
+    }
+
+    static final class Subtract extends NumberArithmetic {
+        Subtract(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double executeNumber() throws UnexpectedResult {
+            double leftValue = leftNumber();
+
+            return leftValue - rightNumber(leftValue);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue - rightValue;
+        }
+    }
+
+    static final class Multiply extends NumberArithmetic {
+        Multiply(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double executeNumber() throws UnexpectedResult {
+            double leftValue = leftNumber();
+
+            return leftValue * rightNumber(leftValue);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue * rightValue;
+        }
+    }
+
+    static final class Divide extends NumberArithmetic {
+        Divide(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double executeNumber() throws UnexpectedResult {
+            double leftValue = leftNumber();
+
+            return leftValue / rightNumber(leftValue);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue / rightValue;
+        }
+    }
+
+    /**
+     * Comparison or equality of two numbers
+     */
+    static class NumberComparison extends Binary {
+        NumberComparison(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            double leftValue;
+            double rightValue;
+
+            try {
+                leftValue = left.executeNumber();
+            } catch (UnexpectedResult result) {
+                return deoptimize(result.value, right.execute());
+            }
+
+            try {
+                rightValue = right.executeNumber();
+            } catch (UnexpectedResult result) {
+                return deoptimize(leftValue, result.value);
+            }
+
+            return apply(leftValue, rightValue);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return apply((double) leftValue, (double) rightValue);
+            }
+
+            return deoptimize(leftValue, rightValue);
+        }
+
+        private boolean apply(double leftValue, double rightValue) {
+            return Interpreter.compare(operator, leftValue, rightValue);
+        }
+    }
+
+    /**
+     * + on two strings
+     */
+    static class StringConcat extends Binary {
+        StringConcat(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+
+            return executeWith(leftValue, rightValue);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            if (leftValue instanceof LoxString && rightValue instanceof LoxString) {
+                return ((LoxString) leftValue).concat((LoxString) rightValue);
+            }
+
+            return deoptimize(leftValue, rightValue);
+        }
+    }
+
+    /**
+     * Any operator on any operands, with Interpreter's type checks. Never
+     * specializes again
+     */
+    static class Generic extends Binary {
+        Generic(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+
+            return executeWith(leftValue, rightValue);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+    }
+}
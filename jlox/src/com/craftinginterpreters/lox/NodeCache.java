@@ -0,0 +1,78 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Node trees of the programs run so far in this JVM, keyed by the hash of their
+ * source like ParseCache. Lox programs have no loops or functions, so a tree
+ * executes only once per run; what makes the specialization of its nodes pay
+ * off is running the same program again, e.g. a script sent to the server over
+ * and over, or a line repeated in the REPL. Such a run skips scanning, parsing
+ * and building, and starts out on the nodes specialized by the runs before.
+ *
+ * Nodes rewrite themselves as they run, so a tree must not run on two threads
+ * at once: take() hands a program to one run only, and give() makes it
+ * available again. Runs of the same source at the same time build their own
+ * trees, and all of them are kept. Past the limit, the programs that haven't
+ * run for the longest time are dropped
+ */
+class NodeCache {
+    static final int DEFAULT_MAX_PROGRAMS = 64;
+
+    private final int maxPrograms;
+    // Programs that aren't running, by key, least recently used first
+    private final LinkedHashMap<String, ArrayDeque<NodeInterpreter.Program>> idle =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private int size = 0;
+
+    /**
+     * @param maxPrograms How many programs to keep at most
+     */
+    NodeCache(int maxPrograms) {
+        this.maxPrograms = maxPrograms;
+    }
+
+    /**
+     * @param key The ParseCache key of the source
+     * @return A program of the source that no other run has, or null if there is
+     *         none
+     */
+    synchronized NodeInterpreter.Program take(String key) {
+        ArrayDeque<NodeInterpreter.Program> programs = idle.get(key);
+
+        if (programs == null) {
+            return null;
+        }
+
+        NodeInterpreter.Program program = programs.poll();
+        size--;
+
+        if (programs.isEmpty()) {
+            idle.remove(key);
+        }
+
+        return program;
+    }
+
+    /**
+     * Keep a program for the next run of its source
+     *
+     * @param key     The ParseCache key of the source
+     * @param program The program, done running
+     */
+    synchronized void give(String key, NodeInterpreter.Program program) {
+        idle.computeIfAbsent(key, k -> new ArrayDeque<>()).push(program);
+        size++;
+
+        Iterator<Map.Entry<String, ArrayDeque<NodeInterpreter.Program>>> eldest = idle.entrySet().iterator();
+
+        while (size > maxPrograms) {
+            ArrayDeque<NodeInterpreter.Program> programs = eldest.next().getValue();
+            size -= programs.size();
+            eldest.remove();
+        }
+    }
+}
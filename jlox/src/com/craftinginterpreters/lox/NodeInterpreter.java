@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs programs on self-specializing Node trees. Every expression is turned
+ * into a tree of nodes whose binary operators start out uninitialized; executing
+ * the tree specializes them to the operand types they see (see Node), so a tree
+ * that is executed again runs the specialized, mostly unboxed code. Same
+ * semantics as Interpreter. Lox programs have no loops or functions, so within
+ * one run a tree executes once; it's running the program again that pays off,
+ * which NodeCache takes care of.
+ *
+ * Building a tree walks the expression with PostOrder, but nodes execute
+ * themselves by recursing, one level per node. A tree more than
+ * Interpreter.MAX_DEPTH levels deep runs on the Interpreter instead, which can
+ * evaluate trees of any depth
+ */
+class NodeInterpreter implements Expression.Visitor<Node> {
+    private final LoxContext context;
+
+    // For build(): nodes built but not given a parent yet, and how many levels
+    // of nodes each of them has
+    private final PostOrder order = new PostOrder();
+    private Node[] nodes = new Node[64];
+    private int[] heights = new int[64];
+    private int top;
+    // Height of the tallest child taken off the stack for the node being built
+    private int tallest;
+
+    /**
+     * @param context Session the results and errors go to
+     */
+    NodeInterpreter(LoxContext context) {
+        this.context = context;
+    }
+
+    /**
+     * A program with the trees of its statements
+     *
+     * @param statements The statements, for those too deep for the nodes
+     * @param trees      The tree of every statement
+     */
+    record Program(List<Expression> statements, List<Node.Root> trees) {
+    }
+
+    /**
+     * Evaluate every statement and print its result. The trees stay specialized
+     * to what they saw, for the next time the program runs (see NodeCache)
+     *
+     * @param program The program
+     */
+    void interpret(Program program) {
+        try {
+            for (int i = 0; i < program.trees.size(); i++) {
+                Node.Root root = program.trees.get(i);
+                Object value;
+
+                if (root.height > Interpreter.MAX_DEPTH) {
+                    value = context.interpreter().evaluate(program.statements.get(i));
+                } else {
+                    value = root.execute();
+                }
+
+                context.out.println(Interpreter.stringify(value));
+            }
+        } catch (RuntimeError error) {
+            context.runtimeError(error);
+        }
+    }
+
+    /**
+     * @param statements The program
+     * @return The program with a tree for every statement, not specialized yet
+     */
+    Program build(List<Expression> statements) {
+        List<Node.Root> trees = new ArrayList<>(statements.size());
+
+        for (Expression statement : statements) {
+            trees.add(build(statement));
+        }
+
+        return new Program(statements, trees);
+    }
+
+    /**
+     * @param expression The expression
+     * @return An executable tree for it, not specialized yet
+     */
+    Node.Root build(Expression expression) {
+        order.start(expression);
+        top = 0;
+
+        try {
+            for (Expression node = order.next(); node != null; node = order.next()) {
+                tallest = 0;
+                Node built = node.accept(this);
+
+                if (top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                    heights = Arrays.copyOf(heights, top * 2);
+                }
+
+                // A grouping hands on its operand's node, it adds no level
+                nodes[top] = built;
+                heights[top++] = node instanceof Expression.Grouping ? tallest : tallest + 1;
+            }
+
+            int height = heights[top - 1];
+
+            return new Node.Root(pop(), height);
+        } finally {
+            Arrays.fill(nodes, 0, top, null);
+        }
+    }
+
+    @Override
+    public Node visitBinaryExpression(Expression.Binary expression) {
+        Node right = pop();
+        Node left = pop();
+
+        return new Node.Uninitialized(expression.operator, left, right);
+    }
+
+    @Override
+    public Node visitGroupingExpression(Expression.Grouping expression) {
+        // The tree already encodes the precedence
+        return pop();
+    }
+
+    @Override
+    public Node visitLiteralExpression(Expression.Literal expression) {
+        if (expression.value instanceof Double) {
+            return new Node.NumberLiteral((double) expression.value);
+        }
+
+        return new Node.Constant(expression.value);
+    }
+
+    @Override
+    public Node visitUnaryExpression(Expression.Unary expression) {
+        Node operand = pop();
+
+        if (expression.operator.type == TokenType.MINUS) {
+            return new Node.Negate(expression.operator, operand);
+        }
+
+        return new Node.Not(operand);
+    }
+
+    /**
+     * Take a built operand off the stack
+     */
+    private Node pop() {
+        tallest = Math.max(tallest, heights[--top]);
+        Node node = nodes[top];
+        nodes[top] = null;
+
+        return node;
+    }
+}
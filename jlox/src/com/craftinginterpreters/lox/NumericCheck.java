@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Tells whether an expression is statically known to produce a number: number
+ * literals and arithmetic on them. Every node asks once, as it is built, and
+ * keeps the answer (Expression.isNumeric(), FlatAst.isNumeric()); its children
+ * have already been asked by then, so this never looks further than one level
+ * down. There is one method per node type, taking the node's fields, or for
+ * trees other than Expression, whether the children are numeric
+ */
+class NumericCheck {
+    private NumericCheck() {
+    }
+
+    static boolean binary(Expression left, Token operator, Expression right) {
+        return binary(left.isNumeric(), operator, right.isNumeric());
+    }
+
+    static boolean binary(boolean left, Token operator, boolean right) {
+        switch (operator.type) {
+        case MINUS:
+        case PLUS:
+        case SLASH:
+        case STAR:
+            return left && right;
+        default:
+            // Comparisons produce booleans
+            return false;
+        }
+    }
+
+    static boolean grouping(Expression expression) {
+        return grouping(expression.isNumeric());
+    }
+
+    static boolean grouping(boolean expression) {
+        return expression;
+    }
+
+    static boolean literal(Object value) {
+        return value instanceof Double;
+    }
+
+    static boolean unary(Token operator, Expression right) {
+        return unary(operator, right.isNumeric());
+    }
+
+    static boolean unary(Token operator, boolean right) {
+        return operator.type == TokenType.MINUS && right;
+    }
+}
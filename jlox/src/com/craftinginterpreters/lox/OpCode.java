@@ -0,0 +1,37 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Instructions of the bytecode VM. Operands follow the opcode in the code array
+ */
+final class OpCode {
+    // Push numbers[u16] / numbers[u32]
+    static final byte NUMBER = 0;
+    static final byte NUMBER_WIDE = 1;
+    // Push constants[u16] / constants[u32]
+    static final byte CONSTANT = 2;
+    static final byte CONSTANT_WIDE = 3;
+    static final byte NIL = 4;
+    static final byte TRUE = 5;
+    static final byte FALSE = 6;
+
+    static final byte NEGATE = 7;
+    static final byte NOT = 8;
+
+    static final byte ADD = 9;
+    static final byte SUBTRACT = 10;
+    static final byte MULTIPLY = 11;
+    static final byte DIVIDE = 12;
+
+    static final byte EQUAL = 13;
+    static final byte NOT_EQUAL = 14;
+    static final byte GREATER = 15;
+    static final byte GREATER_EQUAL = 16;
+    static final byte LESS = 17;
+    static final byte LESS_EQUAL = 18;
+
+    // Pop the result
+    static final byte RETURN = 19;
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,173 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies an expression tree before it's executed: operators on literals are
+ * evaluated up front, groupings are dropped (the tree already encodes the
+ * precedence) and a few identities that can't change the result are applied.
+ * The tree is walked with PostOrder, so every node sees its operands already
+ * optimized, on top of a stack, and trees of any depth can be optimized
+ */
+class Optimizer implements Expression.Visitor<Expression> {
+    private final PostOrder order = new PostOrder();
+    // Optimized nodes not used by a parent yet
+    private final List<Expression> results = new ArrayList<>();
+    // Evaluates the folded operators
+    private final Interpreter interpreter;
+
+    /**
+     * @param context Session the folding happens in
+     */
+    Optimizer(LoxContext context) {
+        this.interpreter = new Interpreter(context);
+    }
+
+    /**
+     * @param expression The expression
+     * @return An equivalent, smaller expression
+     */
+    Expression optimize(Expression expression) {
+        order.start(expression);
+
+        try {
+            for (Expression node = order.next(); node != null; node = order.next()) {
+                results.add(node.accept(this));
+            }
+
+            return pop();
+        } finally {
+            results.clear();
+        }
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        Expression right = pop();
+        Expression left = pop();
+
+        if (left != expression.left || right != expression.right) {
+            expression = new Expression.Binary(left, expression.operator, right);
+        }
+
+        if (left instanceof Expression.Literal && right instanceof Expression.Literal) {
+            return fold(expression);
+        }
+
+        // Identities only hold for numbers; anything else has to fail at runtime
+        switch (expression.operator.type) {
+        case STAR:
+            if (isNumber(right, 1) && left.isNumeric()) {
+                return left;
+            }
+            if (isNumber(left, 1) && right.isNumeric()) {
+                return right;
+            }
+            break;
+        case SLASH:
+            if (isNumber(right, 1) && left.isNumeric()) {
+                return left;
+            }
+            break;
+        case MINUS:
+            // Not true for x + 0, which turns -0 into 0
+            if (isNumber(right, 0) && left.isNumeric()) {
+                return left;
+            }
+            break;
+        default:
+            break;
+        }
+
+        return expression;
+    }
+
+    @Override
+    public Expression visitGroupingExpression(Expression.Grouping expression) {
+        return pop();
+    }
+
+    @Override
+    public Expression visitLiteralExpression(Expression.Literal expression) {
+        return expression;
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        Expression right = pop();
+
+        if (right != expression.right) {
+            expression = new Expression.Unary(expression.operator, right);
+        }
+
+        if (right instanceof Expression.Literal) {
+            return fold(expression);
+        }
+
+        // Double negation cancels out for numbers, double not for booleans
+        if (right instanceof Expression.Unary inner && inner.operator.type == expression.operator.type) {
+            if (expression.operator.type == TokenType.MINUS && inner.right.isNumeric()) {
+                return inner.right;
+            }
+            if (expression.operator.type == TokenType.BANG && isBoolean(inner.right)) {
+                return inner.right;
+            }
+        }
+
+        return expression;
+    }
+
+    /**
+     * Evaluates an operator whose operands are literals. If that fails, the node
+     * stays as it is so the error still happens at runtime
+     */
+    private Expression fold(Expression expression) {
+        try {
+            return new Expression.Literal(interpreter.evaluate(expression));
+        } catch (RuntimeError error) {
+            return expression;
+        }
+    }
+
+    /**
+     * Take an optimized operand off the stack
+     */
+    private Expression pop() {
+        return results.remove(results.size() - 1);
+    }
+
+    private static boolean isNumber(Expression expression, double value) {
+        return expression instanceof Expression.Literal literal && literal.value instanceof Double
+                && (double) literal.value == value;
+    }
+
+    /**
+     * @return Whether the expression statically produces a boolean
+     */
+    private static boolean isBoolean(Expression expression) {
+        if (expression instanceof Expression.Literal literal) {
+            return literal.value instanceof Boolean;
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            return unary.operator.type == TokenType.BANG;
+        }
+
+        if (expression instanceof Expression.Binary binary) {
+            switch (binary.operator.type) {
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return true;
+            default:
+                return false;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,190 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Scans big sources in parallel. A quick pre-pass splits the source into chunks
+ * at newlines that are outside of string literals and comments, so every chunk
+ * starts at the beginning of a lexeme. The pre-pass also counts lines, so every
+ * chunk knows its first line number. The chunks are then scanned on the
+ * ForkJoinPool and the results are joined, giving the same tokens as a
+ * sequential scan. Every chunk reports its errors to a fork of the context;
+ * they are passed on in source order, so they come out as in a sequential scan
+ */
+class ParallelScanner {
+    // Below this size scanning in one go is faster than splitting the work
+    private static final int MIN_PARALLEL_LENGTH = 1 << 20;
+    private static final int MIN_CHUNK_LENGTH = 1 << 16;
+
+    private final CharSequence source;
+    private final ForkJoinPool pool;
+    private final LoxContext context;
+
+    // Offset and line number of every chunk
+    private final List<Integer> chunkStarts = new ArrayList<>();
+    private final List<Integer> chunkLines = new ArrayList<>();
+
+    ParallelScanner(CharSequence source, LoxContext context) {
+        this(source, ForkJoinPool.commonPool(), context);
+    }
+
+    ParallelScanner(CharSequence source, ForkJoinPool pool, LoxContext context) {
+        this.source = source;
+        this.pool = pool;
+        this.context = context;
+
+        // A few chunks per thread so an unlucky chunk doesn't hold up the rest
+        split(Math.max(MIN_CHUNK_LENGTH, source.length() / (pool.getParallelism() * 4)));
+    }
+
+    /**
+     * @param source The source text
+     * @return Whether the source is big enough and there are enough cores for a
+     *         parallel scan to pay off
+     */
+    static boolean worthwhile(CharSequence source) {
+        return source.length() >= MIN_PARALLEL_LENGTH && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Same as Scanner.scanTokens(), but in parallel
+     *
+     * @return Token list
+     */
+    List<Token> scanTokens() {
+        List<List<Token>> chunks = scanChunks(scanner -> scanner.scanTokens());
+
+        int size = 0;
+
+        for (List<Token> chunk : chunks) {
+            size += chunk.size() - 1;
+        }
+
+        List<Token> tokens = new ArrayList<>(size + 1);
+
+        // Every chunk ends with an EOF; only the one of the last chunk is real
+        for (List<Token> chunk : chunks) {
+            tokens.addAll(chunk.subList(0, chunk.size() - 1));
+        }
+
+        List<Token> last = chunks.get(chunks.size() - 1);
+        tokens.add(last.get(last.size() - 1));
+
+        return tokens;
+    }
+
+    /**
+     * Same as Scanner.scanPacked(), but in parallel
+     *
+     * @return Packed tokens
+     */
+    TokenBuffer scanPacked() {
+        List<TokenBuffer> chunks = scanChunks(scanner -> scanner.scanPacked());
+        TokenBuffer tokens = new TokenBuffer(source);
+
+        for (TokenBuffer chunk : chunks) {
+            tokens.appendTokens(chunk);
+        }
+
+        TokenBuffer last = chunks.get(chunks.size() - 1);
+        int eof = last.size() - 1;
+        tokens.add(TokenType.EOF, last.start(eof), 0, last.line(eof));
+
+        return tokens;
+    }
+
+    private interface ChunkScan<T> {
+        T scan(Scanner scanner);
+    }
+
+    /**
+     * Scans all chunks on the pool
+     *
+     * @return One result per chunk, in source order
+     */
+    private <T> List<T> scanChunks(ChunkScan<T> scan) {
+        List<Callable<T>> tasks = new ArrayList<>();
+        List<LoxContext> forks = new ArrayList<>();
+
+        for (int i = 0; i < chunkStarts.size(); i++) {
+            int from = chunkStarts.get(i);
+            int to = i + 1 < chunkStarts.size() ? chunkStarts.get(i + 1) : source.length();
+            int line = chunkLines.get(i);
+            LoxContext fork = context.fork();
+
+            forks.add(fork);
+            tasks.add(() -> scan.scan(new Scanner(source, from, to, line, fork)));
+        }
+
+        List<T> results = new ArrayList<>();
+
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning", error);
+        } catch (ExecutionException error) {
+            throw new IllegalStateException("Scanning a chunk failed", error.getCause());
+        }
+
+        // All chunks are done, so the forks can be read from this thread
+        for (LoxContext fork : forks) {
+            context.join(fork);
+        }
+
+        return results;
+    }
+
+    /**
+     * The pre-pass: finds the chunk boundaries. Only strings and comments matter
+     * here, everything else is skipped over
+     *
+     * @param chunkLength Minimum length of a chunk
+     */
+    private void split(int chunkLength) {
+        int length = source.length();
+        int chunkStart = 0;
+        int line = 1;
+
+        chunkStarts.add(0);
+        chunkLines.add(1);
+
+        for (int i = 0; i < length; i++) {
+            char character = source.charAt(i);
+
+            if (character == '\n') {
+                line++;
+
+                // Right after a newline the scanner is always between lexemes
+                if (i + 1 - chunkStart >= chunkLength && i + 1 < length) {
+                    chunkStart = i + 1;
+                    chunkStarts.add(chunkStart);
+                    chunkLines.add(line);
+                }
+            } else if (character == '"') {
+                // Skip the string, including its closing quote
+                i++;
+
+                while (i < length && source.charAt(i) != '"') {
+                    if (source.charAt(i) == '\n') {
+                        line++;
+                    }
+
+                    i++;
+                }
+            } else if (character == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                // Skip the comment, but not the newline that ends it
+                while (i + 1 < length && source.charAt(i + 1) != '\n') {
+                    i++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of parsed trees, keyed by the SHA-256 of the source bytes. A
+ * hit skips scanning and parsing altogether. Every hit touches the file, and
+ * once the directory grows beyond its size limit the least recently used
+ * entries are deleted. The cache is only an optimization: anything that goes
+ * wrong with it counts as a miss
+ */
+class ParseCache {
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // Bump when the format changes; old entries then count as misses
+    private static final int VERSION = 4;
+    private static final int MAGIC = 0x4c4f5841; // "LOXA"
+    private static final String SUFFIX = ".ast";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory Where to keep the entries
+     * @param maxBytes  Total size the entries may take up
+     */
+    ParseCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return Cache in $LOX_CACHE_DIR, or ~/.cache/jlox if that isn't set
+     */
+    static Path defaultDirectory() {
+        String directory = System.getenv("LOX_CACHE_DIR");
+
+        if (directory != null && !directory.isEmpty()) {
+            return Paths.get(directory);
+        }
+
+        return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+    }
+
+    /**
+     * @param source The source bytes; its position is left alone
+     * @return The cache key for the source; NodeCache uses the same
+     */
+    static String key(ByteBuffer source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+
+            StringBuilder key = new StringBuilder();
+
+            for (byte value : digest.digest()) {
+                key.append(String.format("%02x", value));
+            }
+
+            return key.toString();
+        } catch (NoSuchAlgorithmException error) {
+            // Every JVM has to support SHA-256
+            throw new IllegalStateException(error);
+        }
+    }
+
+    /**
+     * @param key Cache key
+     * @return The cached program, or null on a miss
+     */
+    List<Expression> load(String key) {
+        Path path = directory.resolve(key + SUFFIX);
+
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (input.remaining() < 8 || input.getInt() != MAGIC || input.getInt() != VERSION) {
+                return null;
+            }
+
+            List<Expression> statements = ExpressionSerializer.deserializeAll(input);
+
+            // Mark as recently used
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return statements;
+        } catch (IOException | RuntimeException error) {
+            // Truncated or corrupt entries throw BufferUnderflowException and the like
+            return null;
+        }
+    }
+
+    /**
+     * Adds a program to the cache, then evicts entries if it got too big
+     *
+     * @param key        Cache key
+     * @param statements The parsed program
+     */
+    void store(String key, List<Expression> statements) {
+        try {
+            ByteBuffer tree = ExpressionSerializer.serializeAll(statements);
+            Files.createDirectories(directory);
+
+            // Write to a temporary file first, so concurrent runs never see half an entry
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip();
+
+                while (header.hasRemaining() || tree.hasRemaining()) {
+                    channel.write(new ByteBuffer[] { header, tree });
+                }
+            } catch (IOException error) {
+                Files.deleteIfExists(temporary);
+                throw error;
+            }
+
+            Files.move(temporary, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            evict();
+        } catch (IOException | RuntimeException | StackOverflowError error) {
+            // Not cached this time; the cache must never fail a run
+        }
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its size limit
+     */
+    private void evict() throws IOException {
+        List<Path> paths = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.toString().endsWith(SUFFIX)).forEach(paths::add);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+
+        for (Path path : paths) {
+            Entry entry = Entry.of(path);
+            entries.add(entry);
+            total += entry.size();
+        }
+
+        if (total <= maxBytes) {
+            return;
+        }
+
+        // Other runs touch the entries they load, so the times are read once,
+        // above; sorting on live ones could see them change halfway
+        entries.sort(Comparator.comparingLong(Entry::lastModified));
+
+        for (Entry entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+
+            if (Files.deleteIfExists(entry.path())) {
+                total -= entry.size();
+            }
+        }
+    }
+
+    /**
+     * A cache file as it was when evict() looked at it
+     */
+    private record Entry(Path path, long lastModified, long size) {
+        static Entry of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+                return new Entry(path, attributes.lastModifiedTime().toMillis(), attributes.size());
+            } catch (IOException error) {
+                // Entries can vanish while we look at them when runs share the cache
+                return new Entry(path, 0, 0);
+            }
+        }
+    }
+}
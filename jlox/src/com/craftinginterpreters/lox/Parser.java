@@ -1,100 +1,257 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.List;
 import static com.craftinginterpreters.lox.TokenType.*;
 
 class Parser {
-    private final List<Token> tokens;
-    private int current = 0;
+    static class ParseError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // Stop reporting after this many syntax errors
+    static final int DEFAULT_MAX_ERRORS = 100;
+
+    // Operators of the grammar rules
+    static final TokenSet EQUALITY_OPERATORS = TokenSet.of(BANG_EQUAL, EQUAL_EQUAL);
+    static final TokenSet COMPARISON_OPERATORS = TokenSet.of(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL);
+    static final TokenSet TERM_OPERATORS = TokenSet.of(MINUS, PLUS);
+    static final TokenSet FACTOR_OPERATORS = TokenSet.of(SLASH, STAR);
+    static final TokenSet UNARY_OPERATORS = TokenSet.of(BANG, MINUS);
+    // Keywords that begin a statement, where synchronize() stops
+    private static final TokenSet STATEMENT_KEYWORDS = TokenSet.of(CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN);
+
+    final TokenStream tokens;
+    private final LoxContext context;
+    private final int maxErrors;
+    // Where the recognized nodes go; set by the parse method
+    AstBuilder builder;
+    private int errorCount = 0;
+
+    Parser(List<Token> tokens, LoxContext context) {
+        this(new ListTokenStream(tokens), context);
+    }
 
-    Parser(List<Token> tokens) {
+    /**
+     * @param tokens  The tokens to parse
+     * @param context Session the errors are reported to; its options say how
+     *                many to report before giving up
+     */
+    Parser(TokenStream tokens, LoxContext context) {
         this.tokens = tokens;
+        this.context = context;
+        this.maxErrors = context.options.maxErrors();
+    }
+
+    /**
+     * Parse the tokens into a program. After a syntax error the parser skips to
+     * the next statement and goes on, so one pass reports all errors
+     *
+     * @return The statements that parsed without errors
+     */
+    List<Expression> parse() {
+        TreeBuilder tree = new TreeBuilder();
+        builder = tree;
+
+        List<Expression> statements = new ArrayList<>();
+
+        while (!isDone()) {
+            int statement = statement();
+
+            if (statement >= 0) {
+                statements.add(tree.get(statement));
+            }
+
+            tree.clear();
+        }
+
+        return statements;
+    }
+
+    /**
+     * Parse the tokens into the flat, array based form of the tree, recovering
+     * from errors like parse()
+     *
+     * @return The tree, holding the statements that parsed without errors
+     */
+    FlatAst parseFlat() {
+        FlatAst ast = new FlatAst();
+        builder = ast;
+
+        while (!isDone()) {
+            int mark = ast.size();
+            int statement = statement();
+
+            if (statement >= 0) {
+                ast.addStatement(statement);
+            } else {
+                // Drop the nodes of the broken statement
+                ast.truncate(mark);
+            }
+        }
+
+        return ast;
+    }
+
+    /**
+     * @return Whether the whole program has been parsed, or too many errors
+     *         were found to go on
+     */
+    private boolean isDone() {
+        return isAtEnd() || errorCount >= maxErrors;
+    }
+
+    /**
+     * program -> statement* EOF
+     * statement -> expression ( ";" | EOF )
+     *
+     * @return Handle of the statement, or -1 if it had a syntax error
+     */
+    private int statement() {
+        try {
+            int expression = expression();
+
+            if (!isAtEnd()) {
+                consume(SEMICOLON, "Expect ';' after expression.");
+            }
+
+            return expression;
+        } catch (ParseError error) {
+            synchronize();
+            return -1;
+        }
+    }
+
+    /**
+     * Panic mode: discard tokens up to the start of the next statement, which is
+     * right after a semicolon or at a keyword that begins a statement
+     */
+    private void synchronize() {
+        // Errors are always reported at the current token. Skip it no matter what,
+        // otherwise a keyword there would be hit again and again
+        boolean semicolon = check(SEMICOLON);
+        advance();
+
+        if (semicolon) {
+            return;
+        }
+
+        while (!isAtEnd()) {
+            if (match(SEMICOLON) || STATEMENT_KEYWORDS.contains(tokens.peekType())) {
+                return;
+            }
+
+            advance();
+        }
     }
 
-    private Expression expression() {
+    // The grammar rules return the handle the builder gave the node
+
+    /**
+     * expression -> equality
+     *
+     * The entry point for subclasses with a different expression parser
+     */
+    int expression() {
         return equality();
     }
 
-    private Expression equality() {
-        Expression expression = comparison();
+    private int equality() {
+        int expression = comparison();
 
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
+        while (match(EQUALITY_OPERATORS)) {
             Token operator = previous();
-            Expression right = comparison();
-            expression = new Expression.Binary(expression, operator, right);
+            int right = comparison();
+            expression = builder.binary(expression, operator, right);
         }
 
         return expression;
     }
 
-    private Expression comparison() {
-        Expression expression = term();
+    private int comparison() {
+        int expression = term();
 
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
+        while (match(COMPARISON_OPERATORS)) {
             Token operator = previous();
-            Expression right = term();
-            expression = new Expression.Binary(expression, operator, right);
+            int right = term();
+            expression = builder.binary(expression, operator, right);
         }
 
         return expression;
     }
 
-    private Expression term() {
-        Expression expression = factor();
+    private int term() {
+        int expression = factor();
 
-        while (match(MINUS, PLUS)) {
+        while (match(TERM_OPERATORS)) {
             Token operator = previous();
-            Expression right = factor();
-            expression = new Expression.Binary(expression, operator, right);
+            int right = factor();
+            expression = builder.binary(expression, operator, right);
         }
 
         return expression;
     }
 
-    private Expression factor() {
-        Expression expression = unary();
+    private int factor() {
+        int expression = unary();
 
-        while (match(SLASH, STAR)) {
+        while (match(FACTOR_OPERATORS)) {
             Token operator = previous();
-            Expression right = unary();
-            expression = new Expression.Binary(expression, operator, right);
+            int right = unary();
+            expression = builder.binary(expression, operator, right);
         }
 
         return expression;
     }
 
-    private Expression unary() {
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
-            Expression right = unary();
-            return new Expression.Unary(operator, right);
+    private int unary() {
+        if (!match(UNARY_OPERATORS)) {
+            return primary();
         }
 
-        return primary();
+        // Collect chains like "- - !x" in a loop instead of recursing, so they can
+        // be arbitrarily long
+        List<Token> operators = new ArrayList<>();
+        operators.add(previous());
+
+        while (match(UNARY_OPERATORS)) {
+            operators.add(previous());
+        }
+
+        int expression = primary();
+
+        for (int i = operators.size() - 1; i >= 0; i--) {
+            expression = builder.unary(operators.get(i), expression);
+        }
+
+        return expression;
     }
 
-    private Expression primary() {
+    private int primary() {
         if (match(FALSE)) {
-            return new Expression.Literal(false);
+            return builder.literal(false);
         }
         if (match(TRUE)) {
-            return new Expression.Literal(true);
+            return builder.literal(true);
         }
         if (match(NIL)) {
-            return new Expression.Literal(null);
+            return builder.literal(null);
         }
 
-        if (match(NUMBER, STRING)) {
-            return new Expression.Literal(previous().literal);
+        if (match(NUMBER)) {
+            return builder.number(tokens.previousNumber());
+        }
+        if (match(STRING)) {
+            return builder.literal(tokens.previousLiteral());
         }
 
         if (match(LEFT_PAREN)) {
-            Expression expression = expression();
+            int expression = expression();
             consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expression.Grouping(expression);
+            return builder.grouping(expression);
         }
 
-        // FIXME: Return type
+        throw error(peek(), "Expect expression.");
     }
 
     /**
@@ -103,12 +260,25 @@ class Parser {
      *
      * @param types Token Types
      */
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
-            }
+    private boolean match(TokenSet types) {
+        if (types.contains(tokens.peekType())) {
+            advance();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if current token is of the type; consumes the token if this is the
+     * case
+     *
+     * @param type TokenType
+     */
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
         }
 
         return false;
@@ -120,11 +290,12 @@ class Parser {
      *
      * @param type    TokenType
      * @param message The error message
-     * @return The previous token, result of advance() being called on our token
+     * @return The consumed token
      */
-    private Token consume(TokenType type, String message) {
+    Token consume(TokenType type, String message) {
         if (check(type)) {
-            return advance();
+            advance();
+            return previous();
         }
 
         throw error(peek(), message);
@@ -140,27 +311,23 @@ class Parser {
             return false;
         }
 
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
     /**
-     * Consumes the token: Advances <b>current</b> and returns the previous token
-     *
-     * @return The previous token
+     * Consumes the token: Advances <b>current</b>. Use previous() to get hold of it
      */
-    private Token advance() {
+    void advance() {
         if (!isAtEnd()) {
-            current++;
+            tokens.advance();
         }
-
-        return previous();
     }
 
     /**
      * Checks if current token is end of token list
      */
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.peekType() == EOF;
     }
 
     /**
@@ -168,19 +335,24 @@ class Parser {
      *
      * @return The current token
      */
-    private Token peek() {
-        return tokens.get(current);
+    Token peek() {
+        return tokens.peek();
     }
 
     /**
      * @return The most recently consumed token
      */
-    private Token previous() {
-        return tokens.get(current - 1);
+    Token previous() {
+        return tokens.previous();
     }
 
-    private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+    ParseError error(Token token, String message) {
+        errorCount++;
+        context.error(token, message);
+
+        if (errorCount == maxErrors && !isAtEnd()) {
+            context.error(token, "Too many errors, giving up.");
+        }
 
         return new ParseError();
     }
@@ -0,0 +1,62 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * Walks a tree without recursion, handing out every node after its children,
+ * left before right: the order in which a recursive walk finishes them. So a
+ * walker that keeps the results of its nodes on a stack finds a node's operands
+ * on top of it, the way the VM does, and trees of any depth can be walked.
+ * The children come from the generated childCount() and child(), so every
+ * node type is walked.
+ */
+class PostOrder {
+    // Nodes still to walk. A parent stays on the stack below its children, marked
+    // as expanded, and is handed out once they are done
+    private Expression[] nodes = new Expression[64];
+    private boolean[] expanded = new boolean[64];
+    private int top;
+
+    /**
+     * Start walking a tree, dropping whatever is left of the one before
+     */
+    void start(Expression root) {
+        Arrays.fill(nodes, 0, top, null);
+        top = 0;
+        push(root);
+    }
+
+    /**
+     * @return The next node, or null when the whole tree has been handed out
+     */
+    Expression next() {
+        while (top > 0) {
+            Expression node = nodes[top - 1];
+            int count = node.childCount();
+
+            if (expanded[top - 1] || count == 0) {
+                nodes[--top] = null;
+                return node;
+            }
+
+            expanded[top - 1] = true;
+
+            // First child on top so it comes first
+            for (int i = count - 1; i >= 0; i--) {
+                push(node.child(i));
+            }
+        }
+
+        return null;
+    }
+
+    private void push(Expression node) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            expanded = Arrays.copyOf(expanded, top * 2);
+        }
+
+        nodes[top] = node;
+        expanded[top++] = false;
+    }
+}
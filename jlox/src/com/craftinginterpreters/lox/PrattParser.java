@@ -0,0 +1,134 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * Parser with a Pratt (precedence climbing) expression core. Instead of one
+ * method per precedence level, a table gives the binding power of every
+ * binary operator, and a single loop keeps extending the left operand while the
+ * next operator binds at least as tightly as the current level. A literal is
+ * one switch away from expression() rather than at the bottom of seven nested
+ * calls. The trees, errors and error recovery are the same as Parser's
+ */
+class PrattParser extends Parser {
+    // Binding powers; higher binds tighter. All binary operators are left
+    // associative
+    private static final int EQUALITY = 1;
+    private static final int COMPARISON = 2;
+    private static final int TERM = 3;
+    private static final int FACTOR = 4;
+
+    // Binding power of every token as a binary operator, by TokenType ordinal; 0
+    // for tokens that aren't one, which ends every expression
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        precedence(EQUALITY_OPERATORS, EQUALITY);
+        precedence(COMPARISON_OPERATORS, COMPARISON);
+        precedence(TERM_OPERATORS, TERM);
+        precedence(FACTOR_OPERATORS, FACTOR);
+    }
+
+    PrattParser(List<Token> tokens, LoxContext context) {
+        super(tokens, context);
+    }
+
+    PrattParser(TokenStream tokens, LoxContext context) {
+        super(tokens, context);
+    }
+
+    @Override
+    int expression() {
+        return expression(EQUALITY);
+    }
+
+    /**
+     * Parse an expression whose operators bind at least as tightly as the given
+     * level. Recursion only goes one level deeper per operator of higher
+     * precedence, so chains of operators are parsed in the loop
+     *
+     * @param precedence Lowest binding power to accept
+     * @return Handle of the expression
+     */
+    private int expression(int precedence) {
+        int expression = prefix();
+
+        while (true) {
+            int infix = PRECEDENCE[tokens.peekType().ordinal()];
+
+            if (infix < precedence) {
+                return expression;
+            }
+
+            advance();
+            Token operator = previous();
+            // The right operand only takes operators that bind tighter, which
+            // makes the operator left associative
+            int right = expression(infix + 1);
+            expression = builder.binary(expression, operator, right);
+        }
+    }
+
+    /**
+     * Parse what an expression can start with: a unary operator chain or a primary
+     */
+    private int prefix() {
+        if (!UNARY_OPERATORS.contains(tokens.peekType())) {
+            return primary();
+        }
+
+        // Loop, like Parser.unary(), so chains can be arbitrarily long
+        List<Token> operators = new ArrayList<>();
+
+        while (UNARY_OPERATORS.contains(tokens.peekType())) {
+            advance();
+            operators.add(previous());
+        }
+
+        int expression = primary();
+
+        for (int i = operators.size() - 1; i >= 0; i--) {
+            expression = builder.unary(operators.get(i), expression);
+        }
+
+        return expression;
+    }
+
+    private int primary() {
+        switch (tokens.peekType()) {
+        case FALSE:
+            advance();
+            return builder.literal(false);
+        case TRUE:
+            advance();
+            return builder.literal(true);
+        case NIL:
+            advance();
+            return builder.literal(null);
+        case NUMBER:
+            advance();
+            return builder.number(tokens.previousNumber());
+        case STRING:
+            advance();
+            return builder.literal(tokens.previousLiteral());
+        case LEFT_PAREN:
+            advance();
+            int expression = expression(EQUALITY);
+            consume(RIGHT_PAREN, "Expect ')' after expression.");
+            return builder.grouping(expression);
+        default:
+            throw error(peek(), "Expect expression.");
+        }
+    }
+
+    private static void precedence(TokenSet operators, int precedence) {
+        for (TokenType type : TokenType.values()) {
+            if (operators.contains(type)) {
+                PRECEDENCE[type.ordinal()] = precedence;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * A list of non-negative ints that can sum up any prefix of itself in O(log n),
+ * using a Fenwick tree. Changing values in place costs O(log n) each as well;
+ * inserting or removing values moves the ones behind them and rebuilds the tree,
+ * which is two passes over plain int arrays
+ */
+class PrefixSums {
+    private int[] values = new int[64];
+    // tree[i] is the sum of the values (i - (i & -i), i], counted from 1
+    private int[] tree = new int[65];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The sum of the first count values
+     */
+    int sum(int count) {
+        int sum = 0;
+
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+
+        return sum;
+    }
+
+    /**
+     * @return The number of leading values that sum up to less than target
+     */
+    int countBelow(int target) {
+        int count = 0;
+        int remaining = target;
+
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            if (count + step <= size && tree[count + step] < remaining) {
+                count += step;
+                remaining -= tree[count];
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Replace the values in [from, to) with the first count of replacements
+     */
+    void replace(int from, int to, int[] replacements, int count) {
+        if (count == to - from) {
+            for (int i = 0; i < count; i++) {
+                add(from + i, replacements[i] - values[from + i]);
+                values[from + i] = replacements[i];
+            }
+
+            return;
+        }
+
+        int newSize = size - (to - from) + count;
+
+        if (newSize > values.length) {
+            values = Arrays.copyOf(values, Math.max(newSize, values.length * 2));
+            tree = new int[values.length + 1];
+        }
+
+        System.arraycopy(values, to, values, from + count, size - to);
+        System.arraycopy(replacements, 0, values, from, count);
+        size = newSize;
+        build();
+    }
+
+    private void add(int index, int delta) {
+        for (int i = index + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Build the tree from the values in O(n): every node passes its sum on to
+     * the next node that covers it
+     */
+    private void build() {
+        System.arraycopy(values, 0, tree, 1, size);
+
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
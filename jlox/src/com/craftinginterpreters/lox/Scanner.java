@@ -1,42 +1,51 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
 public class Scanner {
-    private final String source;
-    private static final Map<String, TokenType> keywords;
-    private final List<Token> tokens = new ArrayList<>();
-    private int start = 0;
-    private int current = 0;
-    private int line = 1;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
+    // Integers up to this many digits are exact doubles (10^15 < 2^53)
+    static final int MAX_EXACT_DIGITS = 15;
+    // Powers of ten that are exact doubles
+    static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final CharSequence source;
+    private final LoxContext context;
+    private Token scanned = null;
+    private TokenBuffer buffer = null;
+    private final IdentifierTable identifiers = new IdentifierTable();
+    private final int end;
+    private int start;
+    private int current;
+    private int line;
+
+    /**
+     * @param source  The source text
+     * @param context Session the errors are reported to
+     */
+    Scanner(CharSequence source, LoxContext context) {
+        this(source, 0, source.length(), 1, context);
     }
 
-    Scanner(String source) {
+    /**
+     * Scanner over a part of the source
+     *
+     * @param source  The source text
+     * @param from    Where to start scanning; must be the beginning of a lexeme
+     * @param to      Where to stop scanning (exclusive)
+     * @param line    Line number at <b>from</b>
+     * @param context Session the errors are reported to
+     */
+    Scanner(CharSequence source, int from, int to, int line, LoxContext context) {
         this.source = source;
+        this.context = context;
+        this.end = to;
+        this.start = from;
+        this.current = from;
+        this.line = line;
     }
 
     /**
@@ -45,19 +54,78 @@ public class Scanner {
      * @return Token list
      */
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != EOF);
+
+        return tokens;
+    }
+
+    /**
+     * Consume all chars in source and tokenize them into a packed buffer instead
+     * of one Token object per lexeme
+     *
+     * @return Packed tokens
+     */
+    TokenBuffer scanPacked() {
+        buffer = new TokenBuffer(source);
+
         while (!isAtEnd()) {
             // We are at the beginning of the next lexeme.
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
+        buffer.add(EOF, current, 0, line);
 
-        return tokens;
+        return buffer;
+    }
+
+    /**
+     * Consume just enough chars to produce the next token. This is what the
+     * streaming mode pulls on; once the source is exhausted it keeps returning EOF
+     *
+     * @return The next token
+     */
+    Token nextToken() {
+        while (!isAtEnd()) {
+            // We are at the beginning of the next lexeme.
+            start = current;
+            scanToken();
+
+            // Whitespace and comments don't produce a token, so keep going
+            if (scanned != null) {
+                Token token = scanned;
+                scanned = null;
+
+                return token;
+            }
+        }
+
+        return new Token(EOF, "", null, line);
     }
 
     /**
-     * Detect and tokenize a single token; add it to token list
+     * @return Offset of the next char to scan; right after a token returned by
+     *         nextToken(), this is where that token ends
+     */
+    int position() {
+        return current;
+    }
+
+    /**
+     * @return Line number at position()
+     */
+    int line() {
+        return line;
+    }
+
+    /**
+     * Detect and tokenize a single token; hand it to nextToken()
      */
     private void scanToken() {
         char character = advance();
@@ -136,7 +204,7 @@ public class Scanner {
             } else if (isAlpha(character)) {
                 identifier();
             } else {
-                Lox.error(line, "Unexpected character.");
+                context.error(line, "Unexpected character.");
             }
 
             break;
@@ -144,58 +212,60 @@ public class Scanner {
     }
 
     /**
-     * Tokenize identifier & add it to token list
+     * Tokenize identifier
      */
     private void identifier() {
         while (isAlphaNumeric(peek())) {
             advance();
         }
 
-        String text = source.substring(start, current);
-
-        // Check if identifier is a reserved word
-        TokenType type = keywords.get(text);
-
-        // ...if not, its a normal identifier
-        if (type == null) {
-            type = IDENTIFIER;
-        }
-
-        addToken(type);
+        // Check if identifier is a reserved word; if not, its a normal identifier
+        addToken(Keywords.type(source, start, current));
     }
 
     /**
-     * Tokenize string literal & add to token list
+     * Tokenize string literal
      */
     private void string() {
         while (peek() != '"' && !isAtEnd()) {
             // We support multiline strings
             if (peek() == '\n') {
                 line++;
-                advance();
             }
 
-            // Unterminated string
-            if (isAtEnd()) {
-                Lox.error(line, "Unterminated string.");
-                return;
-            }
-
-            // The closing "
             advance();
+        }
 
-            // Get value by trimming the surrounding quotes
-            String value = source.substring(start + 1, current - 1);
-            addToken(STRING, value);
+        // Unterminated string
+        if (isAtEnd()) {
+            context.error(line, "Unterminated string.");
+            return;
         }
+
+        // The closing "
+        advance();
+
+        addToken(STRING);
     }
 
     /**
-     * Tokenize number literal & add to token list
+     * Tokenize number literal
      */
     private void number() {
+        // Collect the digits while scanning. The first one was consumed already
+        long mantissa = source.charAt(start) - '0';
+        int significantDigits = mantissa == 0 ? 0 : 1;
+        int fractionDigits = 0;
+
         while (isDigit(peek())) {
-            advance();
+            int digit = advance() - '0';
+
+            // Leading zeros don't count towards the precision. Once there are too many
+            // digits the mantissa may overflow, but then it isn't used anyway
+            if (significantDigits > 0 || digit != 0) {
+                significantDigits++;
+            }
+            mantissa = mantissa * 10 + digit;
         }
 
         // Look for a fractional part
@@ -204,11 +274,27 @@ public class Scanner {
             advance();
 
             while (isDigit(peek())) {
-                advance();
+                int digit = advance() - '0';
+
+                if (significantDigits > 0 || digit != 0) {
+                    significantDigits++;
+                }
+                mantissa = mantissa * 10 + digit;
+                fractionDigits++;
             }
         }
 
-        addToken(NUMBER, Double.parseDouble((source.substring(start, current))));
+        double value;
+
+        if (significantDigits <= MAX_EXACT_DIGITS && fractionDigits < POWERS_OF_TEN.length) {
+            // Both operands are exact, so the division is correctly rounded
+            value = mantissa / POWERS_OF_TEN[fractionDigits];
+        } else {
+            // Too precise for the fast path
+            value = Double.parseDouble(text(start, current));
+        }
+
+        addToken(value);
     }
 
     // Helper methods
@@ -263,7 +349,7 @@ public class Scanner {
      * @return Either the char at <b>current</b> + 1 or \0
      */
     private char peekNext() {
-        if (current + 1 >= source.length()) {
+        if (current + 1 >= end) {
             return '\0';
         }
 
@@ -282,27 +368,73 @@ public class Scanner {
         return isAlpha(character) || isDigit(character);
     }
 
+    /**
+     * Cuts a piece of text out of the source
+     *
+     * @param from Start offset (inclusive)
+     * @param to   End offset (exclusive)
+     */
+    private String text(int from, int to) {
+        return source.subSequence(from, to).toString();
+    }
+
+    /**
+     * Lexeme of the current token. Keywords use their constant spelling and
+     * identifiers are interned, so only the first occurrence of a name allocates
+     *
+     * @param type TokenType
+     */
+    private String lexeme(TokenType type) {
+        if (type == IDENTIFIER) {
+            return identifiers.intern(source, start, current);
+        }
+
+        String keyword = Keywords.lexeme(type);
+
+        if (keyword != null) {
+            return keyword;
+        }
+
+        return text(start, current);
+    }
+
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     /**
-     * Adds token without literal value to token list
+     * Emits token. Packed tokens only record where the lexeme is; the value of a
+     * STRING is read from the source later on
      *
      * @param type TokenType
      */
     private void addToken(TokenType type) {
-        addToken(type, null);
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line);
+            return;
+        }
+
+        Object literal = null;
+
+        if (type == STRING) {
+            // The value is the text between the quotes, left in the source
+            literal = LoxString.slice(source, start + 1, current - 1);
+        }
+
+        scanned = new Token(type, lexeme(type), literal, line);
     }
 
     /**
-     * Adds token to token list
+     * Emits NUMBER token. Packed tokens keep the value unboxed
      *
-     * @param type    TokenType
-     * @param literal Literal token value
+     * @param number Literal token value
      */
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void addToken(double number) {
+        if (buffer != null) {
+            buffer.addNumber(start, current - start, line, number);
+            return;
+        }
+
+        scanned = new Token(NUMBER, text(start, current), number, line);
     }
 }
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * TokenStream that pulls tokens from the Scanner on demand. Only the current
+ * and the previous token are kept around, so memory doesn't grow with the
+ * source size and scanning is interleaved with parsing
+ */
+class ScanningTokenStream implements TokenStream {
+    private final Scanner scanner;
+    private Token current;
+    private Token previous = null;
+
+    ScanningTokenStream(Scanner scanner) {
+        this.scanner = scanner;
+        this.current = scanner.nextToken();
+    }
+
+    @Override
+    public Token peek() {
+        return current;
+    }
+
+    @Override
+    public void advance() {
+        if (current.type != TokenType.EOF) {
+            previous = current;
+            current = scanner.nextToken();
+        }
+    }
+
+    @Override
+    public Token previous() {
+        return previous;
+    }
+}
@@ -0,0 +1,310 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs scripts sent over a local TCP connection, so they skip JVM startup and
+ * run on code the JIT has already warmed up. The server only listens on the
+ * loopback address, and since every local user can connect to that, it only
+ * answers requests that start with a secret token. The token is made up anew
+ * at every start and written to a file only the user running the server can
+ * read, ~/.jlox/server-<port>.token; the file is removed on shutdown.
+ *
+ * One request per connection. A request is the token on a line of its own,
+ * then a header line: "run <length>", followed by that many bytes of UTF-8
+ * source, or "stop", which shuts the server down. The response streams the
+ * script's results as lines starting with "out ", its errors as lines
+ * starting with "err ", and ends with "exit <code>", the exit code a run from
+ * the command line would have. Every request runs in a LoxContext of its own,
+ * a bounded number at a time.
+ */
+class Server {
+    static final int DEFAULT_PORT = 7117;
+    // sysexits.h EX_USAGE, for requests the server doesn't understand
+    private static final int USAGE_ERROR = 64;
+    // sysexits.h EX_NOPERM, for requests without the right token
+    private static final int PERMISSION_ERROR = 77;
+    private static final int TOKEN_BYTES = 32;
+    private static final int MAX_HEADER_LENGTH = 4096;
+    // How long a client may take to send its request
+    private static final int REQUEST_TIMEOUT_MILLIS = 30_000;
+
+    private final int port;
+    private final int jobs;
+    private final LoxContext.Options options;
+    // Totals to add the metrics of every request to, or null
+    private final Metrics metrics;
+    private final byte[] token;
+    private volatile ServerSocket socket = null;
+
+    /**
+     * @param port    Port to listen on
+     * @param jobs    How many requests to run at the same time
+     * @param options Settings every request runs with
+     * @param metrics Where to add up the metrics of all requests, or null
+     */
+    Server(int port, int jobs, LoxContext.Options options, Metrics metrics) {
+        this.port = port;
+        this.jobs = Math.max(1, jobs);
+        this.options = options;
+        this.metrics = metrics;
+
+        byte[] secret = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(secret);
+        this.token = HexFormat.of().formatHex(secret).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return Where the token of the server on the given port is kept
+     */
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".jlox", "server-" + port + ".token");
+    }
+
+    /**
+     * Serve requests until one asks to stop
+     *
+     * @throws IOException If the port can't be listened on or the token can't
+     *                     be written
+     */
+    void serve() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        Path tokenFile = tokenFile(port);
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            socket = server;
+            writeToken(tokenFile);
+            System.err.println("Listening on " + server.getLocalSocketAddress() + ", token in " + tokenFile);
+
+            while (true) {
+                Socket connection;
+
+                try {
+                    connection = server.accept();
+                } catch (SocketException error) {
+                    // Closed by a stop request
+                    if (server.isClosed()) {
+                        break;
+                    }
+                    throw error;
+                }
+
+                pool.execute(() -> handle(connection));
+            }
+        } finally {
+            // Requests that are running still get answered
+            pool.shutdown();
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    /**
+     * Write the token to a file only the owner can read, in a directory only the
+     * owner can get into
+     */
+    private void writeToken(Path file) throws IOException {
+        Path directory = file.getParent();
+
+        try {
+            Files.createDirectories(directory,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+            // A new file, so nobody can hold it open from an earlier run
+            Files.deleteIfExists(file);
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException error) {
+            // Not a POSIX file system; the user's home directory has to do
+            Files.createDirectories(directory);
+            Files.deleteIfExists(file);
+            Files.createFile(file);
+        }
+
+        Files.write(file, token);
+    }
+
+    /**
+     * Answer one connection, on the calling thread
+     */
+    private void handle(Socket connection) {
+        try (connection) {
+            connection.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+
+            InputStream input = new BufferedInputStream(connection.getInputStream());
+            OutputStream output = new BufferedOutputStream(connection.getOutputStream());
+            PrintStream out = new PrintStream(new TaggedOutput(output, "out "), false, StandardCharsets.UTF_8);
+            PrintStream err = new PrintStream(new TaggedOutput(output, "err "), false, StandardCharsets.UTF_8);
+
+            int status;
+
+            // Compared in constant time, so the time it takes doesn't give the token away
+            if (!MessageDigest.isEqual(readLine(input).getBytes(StandardCharsets.US_ASCII), token)) {
+                err.println("Wrong token.");
+                status = PERMISSION_ERROR;
+            } else {
+                status = respond(readLine(input), input, out, err);
+            }
+
+            out.flush();
+            err.flush();
+            output.write(("exit " + status + "\n").getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+        } catch (IOException error) {
+            // The client went away, there's nobody to tell
+        }
+    }
+
+    /**
+     * Carry out a request
+     *
+     * @param request The header line, after the token
+     * @param input   The rest of the request
+     * @param out     Where results go
+     * @param err     Where errors go
+     * @return Exit code for the response
+     */
+    private int respond(String request, InputStream input, PrintStream out, PrintStream err) throws IOException {
+        if (request.equals("stop")) {
+            socket.close();
+            return 0;
+        }
+
+        LoxContext context = new LoxContext(out, err::println, options);
+        int status;
+
+        try {
+            if (request.startsWith("run ")) {
+                int length = parseLength(request.substring("run ".length()));
+
+                if (length < 0) {
+                    err.println("Bad length in request: " + request);
+                    return USAGE_ERROR;
+                }
+
+                byte[] source = input.readNBytes(length);
+
+                if (source.length < length) {
+                    err.println("Request ended after " + source.length + " of " + length + " bytes.");
+                    return USAGE_ERROR;
+                }
+
+                Lox.run(ByteBuffer.wrap(source), context);
+            } else {
+                err.println("Unknown request: " + request);
+                return USAGE_ERROR;
+            }
+
+            status = context.exitCode();
+        } catch (RuntimeException | StackOverflowError error) {
+            // A script that crashes the interpreter must not take the server down
+            err.println("Internal error: " + error);
+            status = 70;
+        }
+
+        if (metrics != null) {
+            metrics.add(context.metrics);
+        }
+
+        return status;
+    }
+
+    /**
+     * @return The next line of the request, without the newline
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+        for (int next = input.read(); next != '\n' && next != -1; next = input.read()) {
+            if (header.size() == MAX_HEADER_LENGTH) {
+                throw new IOException("Request header too long");
+            }
+
+            header.write(next);
+        }
+
+        return header.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The length, or -1 if it isn't one
+     */
+    private static int parseLength(String text) {
+        try {
+            return Math.max(-1, Integer.parseInt(text.trim()));
+        } catch (NumberFormatException error) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes text to the connection with a tag in front of every line
+     */
+    private static class TaggedOutput extends OutputStream {
+        private final OutputStream connection;
+        private final byte[] tag;
+        private boolean atLineStart = true;
+
+        TaggedOutput(OutputStream connection, String tag) {
+            this.connection = connection;
+            this.tag = tag.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (atLineStart) {
+                connection.write(tag);
+                atLineStart = false;
+            }
+
+            connection.write(b);
+            atLineStart = b == '\n';
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            int end = offset + length;
+
+            // Copy whole lines at a time
+            while (offset < end) {
+                if (atLineStart) {
+                    connection.write(tag);
+                    atLineStart = false;
+                }
+
+                int lineEnd = offset;
+
+                while (lineEnd < end && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+
+                if (lineEnd < end) {
+                    lineEnd++;
+                    atLineStart = true;
+                }
+
+                connection.write(bytes, offset, lineEnd - offset);
+                offset = lineEnd;
+            }
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * Scanner driven by tables instead of a switch. Every char is mapped to a
+ * class by a 128-entry table, and a transition table says, for each state and
+ * class, which state comes next or what to do (emit a token, skip, report an
+ * error). The two are combined into one table indexed by state and char when
+ * the class is loaded, so the loop does a single lookup per char. The source is
+ * copied into an array with a '\0' behind the last char, so the loop never
+ * checks for the end: the sentinel has a class of its own, and only when it's
+ * seen does the loop look at the position.
+ *
+ * Produces the same tokens and errors as Scanner.
+ */
+class TableScanner {
+    // Char classes
+    private static final int OTHER = 0;
+    private static final int SENTINEL = 1;
+    private static final int SPACE = 2;
+    private static final int NEWLINE = 3;
+    private static final int DIGIT = 4;
+    private static final int ALPHA = 5;
+    private static final int QUOTE = 6;
+    private static final int SLASH = 7;
+    private static final int DOT = 8;
+    private static final int EQUAL = 9;
+    private static final int BANG = 10;
+    private static final int LESS = 11;
+    private static final int GREATER = 12;
+    // Chars that are a token on their own
+    private static final int SINGLE = 13;
+    private static final int CLASS_COUNT = 14;
+
+    // States; while scanning, a state is the offset of its row in CHAR_TRANSITIONS
+    private static final int START = 0;
+    private static final int IN_IDENTIFIER = 1;
+    private static final int IN_INTEGER = 2;
+    private static final int AFTER_DOT = 3;
+    private static final int IN_FRACTION = 4;
+    private static final int AFTER_BANG = 5;
+    private static final int AFTER_EQUAL = 6;
+    private static final int AFTER_LESS = 7;
+    private static final int AFTER_GREATER = 8;
+    private static final int AFTER_SLASH = 9;
+    private static final int IN_COMMENT = 10;
+    private static final int IN_STRING = 11;
+    private static final int STATE_COUNT = 12;
+
+    // Actions, in the upper bits of a transition; a plain move to the next state
+    // (consuming the char) is 0, so it's the only entry below ACTION_UNIT
+    private static final int ACTION_SHIFT = 16;
+    private static final int ACTION_UNIT = 1 << ACTION_SHIFT;
+    // Consume the char and start over
+    private static final int SKIP = 1;
+    // Consume the newline and start over
+    private static final int SKIP_LINE = 2;
+    // Consume the char and emit the token it completes
+    private static final int EMIT_WITH = 3;
+    // Emit the token that ends before the char
+    private static final int EMIT = 4;
+    // Emit the number that ends before the '.' behind it
+    private static final int EMIT_BEFORE_DOT = 5;
+    // Start over at the char, e.g. the newline ending a comment
+    private static final int RESTART = 6;
+    // A newline inside a string
+    private static final int STRING_LINE = 7;
+    // The sentinel, or a '\0' in the source
+    private static final int END = 8;
+    private static final int STRING_END = 9;
+    private static final int UNEXPECTED = 10;
+    // Argument of EMIT_WITH for chars that are a token on their own: the type is
+    // in SINGLE_TYPES
+    private static final int SINGLE_TYPE = 0xffff;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    // Rough guess for sizing the token buffer
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final TokenType[] SINGLE_TYPES = new TokenType[128];
+    private static final int[] TRANSITIONS = new int[STATE_COUNT * CLASS_COUNT];
+    // TRANSITIONS by char instead of class: a row of 128 ASCII chars per state,
+    // plus one entry for all other chars
+    private static final int ROW_LENGTH = 129;
+    private static final int[] CHAR_TRANSITIONS = new int[STATE_COUNT * ROW_LENGTH];
+
+    static {
+        CLASSES['\0'] = SENTINEL;
+        CLASSES[' '] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['"'] = QUOTE;
+        CLASSES['/'] = SLASH;
+        CLASSES['.'] = DOT;
+        CLASSES['='] = EQUAL;
+        CLASSES['!'] = BANG;
+        CLASSES['<'] = LESS;
+        CLASSES['>'] = GREATER;
+        CLASSES['_'] = ALPHA;
+
+        for (char character = '0'; character <= '9'; character++) {
+            CLASSES[character] = DIGIT;
+        }
+        for (char character = 'a'; character <= 'z'; character++) {
+            CLASSES[character] = ALPHA;
+            CLASSES[Character.toUpperCase(character)] = ALPHA;
+        }
+
+        single('(', LEFT_PAREN);
+        single(')', RIGHT_PAREN);
+        single('{', LEFT_BRACE);
+        single('}', RIGHT_BRACE);
+        single(',', COMMA);
+        single('-', MINUS);
+        single('+', PLUS);
+        single(';', SEMICOLON);
+        single('*', STAR);
+
+        // Between tokens
+        fill(START, action(UNEXPECTED, 0));
+        on(START, SENTINEL, action(END, 0));
+        on(START, SPACE, action(SKIP, 0));
+        on(START, NEWLINE, action(SKIP_LINE, 0));
+        on(START, DIGIT, IN_INTEGER);
+        on(START, ALPHA, IN_IDENTIFIER);
+        on(START, QUOTE, IN_STRING);
+        on(START, SLASH, AFTER_SLASH);
+        on(START, DOT, action(EMIT_WITH, TokenType.DOT.ordinal()));
+        on(START, EQUAL, AFTER_EQUAL);
+        on(START, BANG, AFTER_BANG);
+        on(START, LESS, AFTER_LESS);
+        on(START, GREATER, AFTER_GREATER);
+        on(START, SINGLE, action(EMIT_WITH, SINGLE_TYPE));
+
+        fill(IN_IDENTIFIER, action(EMIT, IDENTIFIER.ordinal()));
+        on(IN_IDENTIFIER, ALPHA, IN_IDENTIFIER);
+        on(IN_IDENTIFIER, DIGIT, IN_IDENTIFIER);
+
+        fill(IN_INTEGER, action(EMIT, NUMBER.ordinal()));
+        on(IN_INTEGER, DIGIT, IN_INTEGER);
+        on(IN_INTEGER, DOT, AFTER_DOT);
+
+        // "1." is a number and a dot
+        fill(AFTER_DOT, action(EMIT_BEFORE_DOT, NUMBER.ordinal()));
+        on(AFTER_DOT, DIGIT, IN_FRACTION);
+
+        fill(IN_FRACTION, action(EMIT, NUMBER.ordinal()));
+        on(IN_FRACTION, DIGIT, IN_FRACTION);
+
+        operator(AFTER_BANG, TokenType.BANG, BANG_EQUAL);
+        operator(AFTER_EQUAL, TokenType.EQUAL, EQUAL_EQUAL);
+        operator(AFTER_LESS, TokenType.LESS, LESS_EQUAL);
+        operator(AFTER_GREATER, TokenType.GREATER, GREATER_EQUAL);
+
+        fill(AFTER_SLASH, action(EMIT, TokenType.SLASH.ordinal()));
+        on(AFTER_SLASH, SLASH, IN_COMMENT);
+
+        // A comment goes until the end of the line
+        fill(IN_COMMENT, IN_COMMENT);
+        on(IN_COMMENT, NEWLINE, action(RESTART, 0));
+        on(IN_COMMENT, SENTINEL, action(END, 0));
+
+        fill(IN_STRING, IN_STRING);
+        on(IN_STRING, QUOTE, action(EMIT_WITH, STRING.ordinal()));
+        on(IN_STRING, NEWLINE, action(STRING_LINE, 0));
+        on(IN_STRING, SENTINEL, action(STRING_END, 0));
+
+        for (int state = 0; state < STATE_COUNT; state++) {
+            for (int character = 0; character < ROW_LENGTH; character++) {
+                int kind = character < 128 ? CLASSES[character] : OTHER;
+                int transition = TRANSITIONS[state * CLASS_COUNT + kind];
+
+                // Rows are addressed by offset, so the loop saves a multiplication
+                if (transition < ACTION_UNIT) {
+                    transition *= ROW_LENGTH;
+                }
+
+                CHAR_TRANSITIONS[state * ROW_LENGTH + character] = transition;
+            }
+        }
+    }
+
+    private final CharSequence source;
+    private final LoxContext context;
+    // The chars to scan followed by the sentinel; chars[i] is source[offset + i]
+    private final char[] chars;
+    private final int offset;
+    private final int firstLine;
+
+    /**
+     * @param source  The source text
+     * @param context Session the errors are reported to
+     */
+    TableScanner(CharSequence source, LoxContext context) {
+        this(source, 0, source.length(), 1, context);
+    }
+
+    /**
+     * Scanner over a part of the source
+     *
+     * @param source  The source text
+     * @param from    Where to start scanning; must be the beginning of a lexeme
+     * @param to      Where to stop scanning (exclusive)
+     * @param line    Line number at <b>from</b>
+     * @param context Session the errors are reported to
+     */
+    TableScanner(CharSequence source, int from, int to, int line, LoxContext context) {
+        this.source = source;
+        this.context = context;
+        this.offset = from;
+        this.firstLine = line;
+        this.chars = new char[to - from + 1];
+
+        if (source instanceof String) {
+            ((String) source).getChars(from, to, chars, 0);
+        } else {
+            for (int i = from; i < to; i++) {
+                chars[i - from] = source.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Same as Scanner.scanTokens()
+     *
+     * @return Token list
+     */
+    List<Token> scanTokens() {
+        TokenBuffer packed = scanPacked();
+        IdentifierTable identifiers = new IdentifierTable();
+        List<Token> tokens = new ArrayList<>(packed.size());
+
+        for (int i = 0; i < packed.size(); i++) {
+            TokenType type = packed.type(i);
+            String lexeme;
+
+            if (type == IDENTIFIER) {
+                lexeme = identifiers.intern(source, packed.start(i), packed.start(i) + packed.length(i));
+            } else if (Keywords.lexeme(type) != null) {
+                lexeme = Keywords.lexeme(type);
+            } else {
+                lexeme = packed.lexeme(i);
+            }
+
+            tokens.add(new Token(type, lexeme, packed.literal(i), packed.line(i)));
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Same as Scanner.scanPacked()
+     *
+     * @return Packed tokens
+     */
+    TokenBuffer scanPacked() {
+        // Room for a token every few chars, so the buffer rarely has to grow
+        TokenBuffer buffer = new TokenBuffer(source, chars.length / CHARS_PER_TOKEN);
+        int[] transitions = CHAR_TRANSITIONS;
+        char[] chars = this.chars;
+        int length = chars.length - 1;
+        int line = firstLine;
+        int state = START;
+        int start = 0;
+        int current = 0;
+
+        while (true) {
+            char character = chars[current];
+            int transition = transitions[state + Math.min(character, ROW_LENGTH - 1)];
+
+            // Moves within a token, the bulk of the work
+            while (transition < ACTION_UNIT) {
+                state = transition;
+                character = chars[++current];
+                transition = transitions[state + Math.min(character, ROW_LENGTH - 1)];
+            }
+
+            int argument = transition & (ACTION_UNIT - 1);
+
+            switch (transition >>> ACTION_SHIFT) {
+            case SKIP:
+                current++;
+                start = current;
+                break;
+            case SKIP_LINE:
+                line++;
+                current++;
+                start = current;
+                break;
+            case EMIT_WITH:
+                current++;
+                buffer.add(argument == SINGLE_TYPE ? SINGLE_TYPES[character] : TYPES[argument], offset + start,
+                        current - start, line);
+                state = START;
+                start = current;
+                break;
+            case EMIT:
+                emit(buffer, TYPES[argument], start, current, line);
+                state = START;
+                start = current;
+                break;
+            case EMIT_BEFORE_DOT:
+                current--;
+                emit(buffer, NUMBER, start, current, line);
+                state = START;
+                start = current;
+                break;
+            case RESTART:
+                state = START;
+                start = current;
+                break;
+            case STRING_LINE:
+                line++;
+                current++;
+                break;
+            case END:
+                if (current == length) {
+                    buffer.add(EOF, offset + current, 0, line);
+                    return buffer;
+                }
+
+                // A '\0' in the source
+                if (state == START) {
+                    context.error(line, "Unexpected character.");
+                    start = current + 1;
+                }
+
+                current++;
+                break;
+            case STRING_END:
+                if (current == length) {
+                    context.error(line, "Unterminated string.");
+                    buffer.add(EOF, offset + current, 0, line);
+                    return buffer;
+                }
+
+                current++;
+                break;
+            default:
+                context.error(line, "Unexpected character.");
+                current++;
+                start = current;
+            }
+        }
+    }
+
+    /**
+     * Adds a token that ends before <b>end</b>, looking up keywords and number
+     * values
+     */
+    private void emit(TokenBuffer buffer, TokenType type, int start, int end, int line) {
+        switch (type) {
+        case IDENTIFIER:
+            buffer.add(Keywords.type(source, offset + start, offset + end), offset + start, end - start, line);
+            break;
+        case NUMBER:
+            buffer.addNumber(offset + start, end - start, line, number(start, end));
+            break;
+        default:
+            buffer.add(type, offset + start, end - start, line);
+        }
+    }
+
+    /**
+     * @param start Index of the first digit
+     * @param end   Index behind the last digit
+     * @return The value of a number lexeme
+     */
+    private double number(int start, int end) {
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+
+        for (int i = start; i < end; i++) {
+            char character = chars[i];
+
+            if (character == '.') {
+                fraction = true;
+                continue;
+            }
+
+            int digit = character - '0';
+
+            // Leading zeros don't count towards the precision
+            if (significantDigits > 0 || digit != 0) {
+                significantDigits++;
+            }
+            mantissa = mantissa * 10 + digit;
+
+            if (fraction) {
+                fractionDigits++;
+            }
+        }
+
+        if (significantDigits <= Scanner.MAX_EXACT_DIGITS && fractionDigits < Scanner.POWERS_OF_TEN.length) {
+            // Both operands are exact, so the division is correctly rounded
+            return mantissa / Scanner.POWERS_OF_TEN[fractionDigits];
+        }
+
+        // Too precise for the fast path
+        return Double.parseDouble(new String(chars, start, end - start));
+    }
+
+    // Building the tables
+
+    private static int action(int action, int argument) {
+        return action << ACTION_SHIFT | argument;
+    }
+
+    private static void single(char character, TokenType type) {
+        CLASSES[character] = SINGLE;
+        SINGLE_TYPES[character] = type;
+    }
+
+    private static void fill(int state, int transition) {
+        for (int kind = 0; kind < CLASS_COUNT; kind++) {
+            on(state, kind, transition);
+        }
+    }
+
+    /**
+     * @param transition Next state, or an action()
+     */
+    private static void on(int state, int kind, int transition) {
+        TRANSITIONS[state * CLASS_COUNT + kind] = transition;
+    }
+
+    /**
+     * Transitions after the first char of a one or two char operator
+     */
+    private static void operator(int state, TokenType single, TokenType withEqual) {
+        fill(state, action(EMIT, single.ordinal()));
+        on(state, EQUAL, action(EMIT_WITH, withEqual.ordinal()));
+    }
+}
@@ -4,7 +4,7 @@ class Token {
     final TokenType type;
     final String lexeme;
     final Object literal;
-    final int line;
+    private final int line;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
@@ -13,6 +13,13 @@ class Token {
         this.line = line;
     }
 
+    /**
+     * @return The line the token is on
+     */
+    int line() {
+        return line;
+    }
+
     public String toString() {
         return type + " " + lexeme + " " + literal;
     }
@@ -0,0 +1,230 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * Compact alternative to a List of Token objects: every token is a row in a set
+ * of parallel primitive arrays. Lexemes are not copied out of the source; they
+ * are only turned into Strings when somebody asks for them
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CharSequence source;
+
+    // One entry per token
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] numberIndexes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // Side table for the values of NUMBER tokens
+    private double[] numbers = new double[INITIAL_CAPACITY];
+    private int numberCount = 0;
+
+    TokenBuffer(CharSequence source) {
+        this(source, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param source   The source text
+     * @param capacity How many tokens to make room for up front
+     */
+    TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+
+        if (capacity > INITIAL_CAPACITY) {
+            types = new byte[capacity];
+            starts = new int[capacity];
+            lengths = new int[capacity];
+            lines = new int[capacity];
+            numberIndexes = new int[capacity];
+        }
+    }
+
+    /**
+     * Appends a token
+     *
+     * @param type   TokenType
+     * @param start  Offset of the lexeme in the source
+     * @param length Length of the lexeme
+     * @param line   Line number
+     */
+    void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) {
+            grow();
+        }
+
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        numberIndexes[size] = -1;
+        size++;
+    }
+
+    /**
+     * Appends all tokens of another buffer over the same source, except its EOF
+     *
+     * @param other The buffer to copy from
+     */
+    void appendTokens(TokenBuffer other) {
+        int count = other.size;
+
+        if (count > 0 && other.type(count - 1) == TokenType.EOF) {
+            count--;
+        }
+
+        while (size + count > types.length) {
+            grow();
+        }
+
+        while (numberCount + other.numberCount > numbers.length) {
+            numbers = Arrays.copyOf(numbers, numbers.length * 2);
+        }
+
+        System.arraycopy(other.types, 0, types, size, count);
+        System.arraycopy(other.starts, 0, starts, size, count);
+        System.arraycopy(other.lengths, 0, lengths, size, count);
+        System.arraycopy(other.lines, 0, lines, size, count);
+        System.arraycopy(other.numbers, 0, numbers, numberCount, other.numberCount);
+
+        // Number indexes point into the other side table
+        for (int i = 0; i < count; i++) {
+            int numberIndex = other.numberIndexes[i];
+            numberIndexes[size + i] = numberIndex < 0 ? -1 : numberCount + numberIndex;
+        }
+
+        size += count;
+        numberCount += other.numberCount;
+    }
+
+    /**
+     * Appends a NUMBER token together with its value
+     *
+     * @param start  Offset of the lexeme in the source
+     * @param length Length of the lexeme
+     * @param line   Line number
+     * @param value  The number
+     */
+    void addNumber(int start, int length, int line, double value) {
+        if (numberCount == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numberCount * 2);
+        }
+
+        add(TokenType.NUMBER, start, length, line);
+        numberIndexes[size - 1] = numberCount;
+        numbers[numberCount++] = value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    /**
+     * @return The value of a NUMBER token, unboxed
+     */
+    double number(int index) {
+        return numbers[numberIndexes[index]];
+    }
+
+    String lexeme(int index) {
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    /**
+     * Same value Token.literal would hold
+     *
+     * @return Double for NUMBER, LoxString without quotes for STRING, otherwise null
+     */
+    Object literal(int index) {
+        switch (type(index)) {
+        case NUMBER:
+            return number(index);
+        case STRING:
+            return LoxString.slice(source, starts[index] + 1, starts[index] + lengths[index] - 1);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Creates a Token object for a single entry
+     */
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), line(index));
+    }
+
+    /**
+     * @return A TokenStream for the Parser that only creates Token objects when
+     *         they are explicitly asked for
+     */
+    TokenStream stream() {
+        return new Cursor();
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        numberIndexes = Arrays.copyOf(numberIndexes, capacity);
+    }
+
+    private class Cursor implements TokenStream {
+        private int current = 0;
+
+        @Override
+        public Token peek() {
+            return token(current);
+        }
+
+        @Override
+        public void advance() {
+            if (type(current) != TokenType.EOF) {
+                current++;
+            }
+        }
+
+        @Override
+        public Token previous() {
+            return token(current - 1);
+        }
+
+        @Override
+        public TokenType peekType() {
+            return type(current);
+        }
+
+        @Override
+        public Object previousLiteral() {
+            return literal(current - 1);
+        }
+
+        @Override
+        public double previousNumber() {
+            return number(current - 1);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Immutable set of token types, kept as a bit mask over their ordinals, so
+ * checking the current token against several types is one AND instead of a
+ * loop over a (varargs) array
+ */
+final class TokenSet {
+    private final long bits;
+
+    private TokenSet(long bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * @param types The token types in the set
+     * @return The set
+     */
+    static TokenSet of(TokenType... types) {
+        long bits = 0;
+
+        for (TokenType type : types) {
+            bits |= 1L << type.ordinal();
+        }
+
+        return new TokenSet(bits);
+    }
+
+    /**
+     * @param type The token type to look for
+     * @return Whether the type is in the set
+     */
+    boolean contains(TokenType type) {
+        return (bits & 1L << type.ordinal()) != 0;
+    }
+
+    static {
+        // Every ordinal needs a bit of its own
+        if (TokenType.values().length > Long.SIZE) {
+            throw new AssertionError("Too many token types for a TokenSet");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * A source of tokens for the Parser. The Parser only ever looks at the current
+ * and the previous token, so implementations don't need to hold more than that
+ */
+interface TokenStream {
+    /**
+     * Views current token without consuming it
+     *
+     * @return The current token
+     */
+    Token peek();
+
+    /**
+     * Consumes the current token. Does nothing once EOF is reached
+     */
+    void advance();
+
+    /**
+     * @return The most recently consumed token
+     */
+    Token previous();
+
+    /**
+     * Same as peek().type, but streams that don't keep Token objects around can
+     * answer it without creating one
+     *
+     * @return The type of the current token
+     */
+    default TokenType peekType() {
+        return peek().type;
+    }
+
+    /**
+     * Same as previous().literal, but streams that don't keep Token objects
+     * around can answer it without creating one
+     *
+     * @return The literal value of the most recently consumed token
+     */
+    default Object previousLiteral() {
+        return previous().literal;
+    }
+
+    /**
+     * Value of the most recently consumed token, which must be a NUMBER. Streams
+     * that keep numbers unboxed can answer it without boxing
+     *
+     * @return The number
+     */
+    default double previousNumber() {
+        return (double) previous().literal;
+    }
+}
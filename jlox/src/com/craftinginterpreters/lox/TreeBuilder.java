@@ -0,0 +1,80 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * Builds the usual Expression objects. The Parser hands over nodes children
+ * first, and a node's children are always the last nodes built that have no
+ * parent yet. So those nodes form a stack: a handle is a position on it, and a
+ * parent takes its children off the top and goes in their place. The stack is
+ * only as deep as the tree is, however many nodes the program has
+ */
+class TreeBuilder implements AstBuilder {
+    private Expression[] nodes = new Expression[64];
+    private int top = 0;
+
+    /**
+     * @param handle Handle the builder returned
+     * @return The node
+     */
+    Expression get(int handle) {
+        return nodes[handle];
+    }
+
+    /**
+     * Drop every node, ready for the next statement; after a syntax error that
+     * includes those built for the broken one
+     */
+    void clear() {
+        Arrays.fill(nodes, 0, top, null);
+        top = 0;
+    }
+
+    @Override
+    public int binary(int left, Token operator, int right) {
+        return replace(left, new Expression.Binary(nodes[left], operator, nodes[right]));
+    }
+
+    @Override
+    public int grouping(int expression) {
+        return replace(expression, new Expression.Grouping(nodes[expression]));
+    }
+
+    @Override
+    public int literal(Object value) {
+        return push(new Expression.Literal(value));
+    }
+
+    @Override
+    public int number(double value) {
+        return push(new Expression.Literal(value));
+    }
+
+    @Override
+    public int unary(Token operator, int right) {
+        return replace(right, new Expression.Unary(operator, nodes[right]));
+    }
+
+    private int push(Expression node) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+        }
+
+        nodes[top] = node;
+
+        return top++;
+    }
+
+    /**
+     * Put a parent in place of its children
+     *
+     * @param first Handle of the first child, the lowest on the stack
+     */
+    private int replace(int first, Expression node) {
+        Arrays.fill(nodes, first + 1, top, null);
+        nodes[first] = node;
+        top = first + 1;
+
+        return first;
+    }
+}
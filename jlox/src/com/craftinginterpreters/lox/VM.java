@@ -0,0 +1,209 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stack VM for compiled expressions. Numbers stay unboxed on a double stack; a
+ * parallel object stack holds everything else, with a marker for slots that
+ * hold a number
+ */
+class VM {
+    private static final Object NUMBER = new Object();
+
+    private final Compiler compiler = new Compiler();
+
+    private double[] numbers = new double[64];
+    private Object[] objects = new Object[64];
+
+    private final LoxContext context;
+
+    /**
+     * @param context Session the results and errors go to
+     */
+    VM(LoxContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Compile and run every statement, printing its result
+     *
+     * @param statements The program
+     */
+    void interpret(List<Expression> statements) {
+        try {
+            for (Expression statement : statements) {
+                Object value = run(compiler.compile(statement));
+                context.out.println(Interpreter.stringify(value));
+            }
+        } catch (RuntimeError error) {
+            context.runtimeError(error);
+        }
+    }
+
+    /**
+     * Run a chunk
+     *
+     * @return The value the chunk returns
+     */
+    Object run(Chunk chunk) {
+        if (numbers.length < chunk.maxStack) {
+            numbers = new double[chunk.maxStack];
+            objects = new Object[chunk.maxStack];
+        }
+
+        try {
+            return execute(chunk, numbers, objects);
+        } finally {
+            // Don't keep the chunk's values alive until the next run
+            Arrays.fill(objects, 0, chunk.maxStack, null);
+        }
+    }
+
+    /**
+     * The dispatch loop; the stacks are parameters, so the JIT can keep them in
+     * registers
+     */
+    private static Object execute(Chunk chunk, double[] numbers, Object[] objects) {
+        byte[] code = chunk.code;
+        int ip = 0;
+        int top = 0;
+
+        for (;;) {
+            byte instruction = code[ip++];
+
+            switch (instruction) {
+            case OpCode.NUMBER:
+                numbers[top] = chunk.numbers[readShort(code, ip)];
+                objects[top++] = NUMBER;
+                ip += 2;
+                break;
+            case OpCode.NUMBER_WIDE:
+                numbers[top] = chunk.numbers[readInt(code, ip)];
+                objects[top++] = NUMBER;
+                ip += 4;
+                break;
+            case OpCode.CONSTANT:
+                objects[top++] = chunk.constants[readShort(code, ip)];
+                ip += 2;
+                break;
+            case OpCode.CONSTANT_WIDE:
+                objects[top++] = chunk.constants[readInt(code, ip)];
+                ip += 4;
+                break;
+            case OpCode.NIL:
+                objects[top++] = null;
+                break;
+            case OpCode.TRUE:
+                objects[top++] = Boolean.TRUE;
+                break;
+            case OpCode.FALSE:
+                objects[top++] = Boolean.FALSE;
+                break;
+            case OpCode.NEGATE:
+                if (objects[top - 1] != NUMBER) {
+                    throw new RuntimeError(chunk.tokens[ip - 1], "Operand must be a number.");
+                }
+                numbers[top - 1] = -numbers[top - 1];
+                break;
+            case OpCode.NOT:
+                objects[top - 1] = !Interpreter.isTruthy(objects[top - 1]);
+                break;
+            case OpCode.ADD:
+                top--;
+                if (objects[top - 1] == NUMBER && objects[top] == NUMBER) {
+                    numbers[top - 1] += numbers[top];
+                } else if (objects[top - 1] instanceof LoxString && objects[top] instanceof LoxString) {
+                    objects[top - 1] = ((LoxString) objects[top - 1]).concat((LoxString) objects[top]);
+                } else {
+                    throw new RuntimeError(chunk.tokens[ip - 1], "Operands must be two numbers or two strings.");
+                }
+                break;
+            case OpCode.SUBTRACT:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                numbers[top - 1] -= numbers[top];
+                break;
+            case OpCode.MULTIPLY:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                numbers[top - 1] *= numbers[top];
+                break;
+            case OpCode.DIVIDE:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                numbers[top - 1] /= numbers[top];
+                break;
+            case OpCode.EQUAL:
+                top--;
+                objects[top - 1] = isEqual(numbers, objects, top - 1, top);
+                break;
+            case OpCode.NOT_EQUAL:
+                top--;
+                objects[top - 1] = !isEqual(numbers, objects, top - 1, top);
+                break;
+            case OpCode.GREATER:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                objects[top - 1] = numbers[top - 1] > numbers[top];
+                break;
+            case OpCode.GREATER_EQUAL:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                objects[top - 1] = numbers[top - 1] >= numbers[top];
+                break;
+            case OpCode.LESS:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                objects[top - 1] = numbers[top - 1] < numbers[top];
+                break;
+            case OpCode.LESS_EQUAL:
+                top--;
+                checkNumberOperands(chunk, ip, objects, top);
+                objects[top - 1] = numbers[top - 1] <= numbers[top];
+                break;
+            case OpCode.RETURN:
+                top--;
+                return objects[top] == NUMBER ? (Object) numbers[top] : objects[top];
+            default:
+                throw new IllegalStateException("Unknown instruction: " + instruction);
+            }
+        }
+    }
+
+    private static int readShort(byte[] code, int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return ((code[offset] & 0xff) << 24) | ((code[offset + 1] & 0xff) << 16) | ((code[offset + 2] & 0xff) << 8)
+                | (code[offset + 3] & 0xff);
+    }
+
+    /**
+     * Throws RuntimeError unless the two topmost slots (<b>top</b> - 1 and
+     * <b>top</b>) hold numbers
+     *
+     * @param ip Instruction pointer, already past the failing instruction
+     */
+    private static void checkNumberOperands(Chunk chunk, int ip, Object[] objects, int top) {
+        if (objects[top - 1] != NUMBER || objects[top] != NUMBER) {
+            throw new RuntimeError(chunk.tokens[ip - 1], "Operands must be numbers.");
+        }
+    }
+
+    /**
+     * Same rules as Interpreter, where numbers compare like Double.equals()
+     */
+    private static boolean isEqual(double[] numbers, Object[] objects, int a, int b) {
+        if (objects[a] == NUMBER || objects[b] == NUMBER) {
+            return objects[a] == objects[b] && Double.compare(numbers[a], numbers[b]) == 0;
+        }
+
+        if (objects[a] == null) {
+            return objects[b] == null;
+        }
+
+        return objects[a].equals(objects[b]);
+    }
+}
@@ -2,6 +2,7 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -17,10 +18,12 @@ public class GenerateAst {
 
         String outputDir = args[0];
 
-        defineAst(outputDir, "Expression",
-                Arrays.asList("Binary   : Expression left, Token operator, Expression right",
-                        "Grouping : Expression expression", "Literal  : Object value",
-                        "Unary    : Token operator, Expression right"));
+        List<String> expressionTypes = Arrays.asList("Binary   : Expression left, Token operator, Expression right",
+                "Grouping : Expression expression", "Literal  : Object value",
+                "Unary    : Token operator, Expression right");
+
+        defineAst(outputDir, "Expression", expressionTypes);
+        defineSerializer(outputDir, "Expression", expressionTypes);
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
@@ -48,6 +51,38 @@ public class GenerateAst {
         writer.println();
         writer.println("    abstract <R> R accept (Visitor<R> visitor);");
 
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * @return The child node at index, counted from the left");
+        writer.println("     */");
+        writer.println("    abstract " + baseName + " child(int index);");
+
+        // Worked out once per node, from the children, when the node is built. The
+        // child count is a field too, so walkers find the leaves without a virtual
+        // call
+        writer.println();
+        writer.println("    private final boolean numeric;");
+        writer.println("    private final int childCount;");
+        writer.println();
+        writer.println("    " + baseName + "(boolean numeric, int childCount) {");
+        writer.println("        this.numeric = numeric;");
+        writer.println("        this.childCount = childCount;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * @return Whether the expression is statically known to produce a number");
+        writer.println("     */");
+        writer.println("    final boolean isNumeric() {");
+        writer.println("        return numeric;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * @return How many child nodes the expression has");
+        writer.println("     */");
+        writer.println("    final int childCount() {");
+        writer.println("        return childCount;");
+        writer.println("    }");
+
         writer.println("}");
         writer.close();
     }
@@ -60,9 +95,25 @@ public class GenerateAst {
 
         // Store parameters in fields
         String[] fields = fieldList.split(", ");
+        List<String> names = new ArrayList<>();
+
+        for (String field : fields) {
+            names.add(field.split(" ")[1]);
+        }
+
+        List<String> children = new ArrayList<>();
 
         for (String field : fields) {
-            String name = field.split(" ")[1];
+            if (field.split(" ")[0].equals(baseName)) {
+                children.add(field.split(" ")[1]);
+            }
+        }
+
+        // The children are built first, so this only looks one level down
+        String numeric = "NumericCheck." + className.toLowerCase() + "(" + String.join(", ", names) + ")";
+        writer.println("            super(" + numeric + ", " + children.size() + ");");
+
+        for (String name : names) {
             writer.println("            this." + name + " = " + name + ";");
         }
 
@@ -75,6 +126,8 @@ public class GenerateAst {
         writer.println("            return visitor.visit" + className + baseName + "(this);");
         writer.println("        }");
 
+        defineChildren(writer, baseName, className, children);
+
         // Fields
         writer.println();
 
@@ -85,6 +138,37 @@ public class GenerateAst {
         writer.println("    }");
     }
 
+    /**
+     * The fields of the base type are the children, in declaration order. Walkers
+     * like PostOrder go through child(), so they know every node type
+     */
+    private static void defineChildren(PrintWriter writer, String baseName, String className,
+            List<String> children) {
+        writer.println();
+        writer.println("        @Override");
+        writer.println("        " + baseName + " child(int index) {");
+
+        if (!children.isEmpty()) {
+            writer.println("            switch (index) {");
+
+            for (int i = 0; i < children.size(); i++) {
+                writer.println("            case " + i + ":");
+                writer.println("                return " + children.get(i) + ";");
+            }
+
+            writer.println("            default:");
+        }
+
+        String indent = children.isEmpty() ? "            " : "                ";
+        writer.println(indent + "throw new IndexOutOfBoundsException(\"" + className + " has no child \" + index);");
+
+        if (!children.isEmpty()) {
+            writer.println("            }");
+        }
+
+        writer.println("        }");
+    }
+
     private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
         writer.println("    interface Visitor<R> {");
 
@@ -98,4 +182,202 @@ public class GenerateAst {
         writer.println("    }");
         writer.println();
     }
+
+    /**
+     * Generates the binary (de)serializer for the AST: a visitor that writes
+     * every node through AstEncoder, and a reader that rebuilds it through
+     * AstDecoder. Nodes are written in post-order (see PostOrder), with their
+     * fields in declaration order minus the child nodes, which come before them.
+     * The reader keeps a stack of the nodes it has built and pops the children
+     * off it, so neither side recurses
+     */
+    private static void defineSerializer(String outputDir, String baseName, List<String> types) throws IOException {
+        String className = baseName + "Serializer";
+        String path = outputDir + "/" + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+        String name = baseName.toLowerCase();
+
+        writer.println("package com.craftinginterpreters.lox;");
+        writer.println();
+        writer.println("import java.nio.ByteBuffer;");
+        writer.println("import java.util.ArrayDeque;");
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * Binary format for " + baseName + " trees. Generated by GenerateAst, so it stays");
+        writer.println(" * in sync with the node types. Nodes are written children first, and END after");
+        writer.println(" * the root, so trees of any depth can be written and read without recursion");
+        writer.println(" */");
+        writer.println("class " + className + " implements " + baseName + ".Visitor<Void> {");
+
+        // One tag per node type
+        for (int i = 0; i < types.size(); i++) {
+            String typeName = types.get(i).split(":")[0].trim();
+            writer.println("    private static final int " + typeName.toUpperCase() + " = " + i + ";");
+        }
+
+        writer.println("    private static final int END = " + types.size() + ";");
+        writer.println();
+        writer.println("    private final AstEncoder encoder;");
+        writer.println("    private final PostOrder order = new PostOrder();");
+        writer.println();
+        writer.println("    private " + className + "(AstEncoder encoder) {");
+        writer.println("        this.encoder = encoder;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static ByteBuffer serialize(" + baseName + " " + name + ") {");
+        writer.println("        AstEncoder encoder = new AstEncoder();");
+        writer.println("        new " + className + "(encoder).write(" + name + ");");
+        writer.println();
+        writer.println("        return encoder.finish();");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static " + baseName + " deserialize(ByteBuffer input) {");
+        writer.println("        return read(new AstDecoder(input), new ArrayDeque<>());");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static ByteBuffer serializeAll(List<" + baseName + "> " + name + "s) {");
+        writer.println("        AstEncoder encoder = new AstEncoder();");
+        writer.println("        " + className + " serializer = new " + className + "(encoder);");
+        writer.println("        encoder.writeCount(" + name + "s.size());");
+        writer.println();
+        writer.println("        for (" + baseName + " " + name + " : " + name + "s) {");
+        writer.println("            serializer.write(" + name + ");");
+        writer.println("        }");
+        writer.println();
+        writer.println("        return encoder.finish();");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static List<" + baseName + "> deserializeAll(ByteBuffer input) {");
+        writer.println("        AstDecoder decoder = new AstDecoder(input);");
+        writer.println("        ArrayDeque<" + baseName + "> stack = new ArrayDeque<>();");
+        writer.println("        int count = decoder.readCount();");
+        writer.println("        List<" + baseName + "> " + name + "s = new ArrayList<>(count);");
+        writer.println();
+        writer.println("        for (int i = 0; i < count; i++) {");
+        writer.println("            " + name + "s.add(read(decoder, stack));");
+        writer.println("        }");
+        writer.println();
+        writer.println("        return " + name + "s;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private void write(" + baseName + " " + name + ") {");
+        writer.println("        order.start(" + name + ");");
+        writer.println();
+        writer.println("        for (" + baseName + " node = order.next(); node != null; node = order.next()) {");
+        writer.println("            node.accept(this);");
+        writer.println("        }");
+        writer.println();
+        writer.println("        encoder.writeTag(END);");
+        writer.println("    }");
+
+        defineReader(writer, baseName, types);
+
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            String[] fields = type.split(":")[1].trim().split(", ");
+
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public Void visit" + typeName + baseName + "(" + baseName + "." + typeName + " " + name
+                    + ") {");
+            writer.println("        encoder.writeTag(" + typeName.toUpperCase() + ");");
+
+            // The children have been written already
+            for (String field : fields) {
+                String fieldType = field.split(" ")[0];
+                String value = name + "." + field.split(" ")[1];
+
+                if (!fieldType.equals(baseName)) {
+                    writer.println("        encoder." + fieldWriter(fieldType) + "(" + value + ");");
+                }
+            }
+
+            writer.println();
+            writer.println("        return null;");
+            writer.println("    }");
+        }
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineReader(PrintWriter writer, String baseName, List<String> types) {
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * Read one tree");
+        writer.println("     *");
+        writer.println("     * @param stack Nodes read but not given a parent yet; empty between trees");
+        writer.println("     */");
+        writer.println("    private static " + baseName + " read(AstDecoder decoder, ArrayDeque<" + baseName
+                + "> stack) {");
+        writer.println("        for (int tag = decoder.readTag(); tag != END; tag = decoder.readTag()) {");
+        writer.println("            switch (tag) {");
+
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            String[] fields = type.split(":")[1].trim().split(", ");
+            List<String> names = new ArrayList<>();
+
+            writer.println("            case " + typeName.toUpperCase() + ": {");
+
+            // The last child is on top of the stack
+            for (int i = fields.length - 1; i >= 0; i--) {
+                String fieldType = fields[i].split(" ")[0];
+
+                if (fieldType.equals(baseName)) {
+                    writer.println("                " + baseName + " " + fields[i].split(" ")[1] + " = stack.pop();");
+                }
+            }
+
+            // The other fields have to be read in order
+            for (String field : fields) {
+                String fieldType = field.split(" ")[0];
+                String name = field.split(" ")[1];
+
+                if (!fieldType.equals(baseName)) {
+                    writer.println("                " + fieldType + " " + name + " = decoder." + fieldReader(fieldType)
+                            + "();");
+                }
+
+                names.add(name);
+            }
+
+            writer.println("                stack.push(new " + baseName + "." + typeName + "("
+                    + String.join(", ", names) + "));");
+            writer.println("                break;");
+            writer.println("            }");
+        }
+
+        writer.println("            default:");
+        writer.println("                throw new IllegalArgumentException(\"Unknown " + baseName + " tag \" + tag);");
+        writer.println("            }");
+        writer.println("        }");
+        writer.println();
+        writer.println("        return stack.pop();");
+        writer.println("    }");
+    }
+
+    private static String fieldWriter(String fieldType) {
+        switch (fieldType) {
+        case "Token":
+            return "writeToken";
+        case "Object":
+            return "writeValue";
+        default:
+            throw new IllegalArgumentException("Can't serialize fields of type " + fieldType);
+        }
+    }
+
+    private static String fieldReader(String fieldType) {
+        switch (fieldType) {
+        case "Token":
+            return "readToken";
+        case "Object":
+            return "readValue";
+        default:
+            throw new IllegalArgumentException("Can't deserialize fields of type " + fieldType);
+        }
+    }
 }